@@ -0,0 +1,286 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * Caches the tokens of a TokenProvider which fetches them from the network.
+ * A token is reused until its time to live ends, and fetched again in the background some time
+ * before, when the shared scheduler fires, so that requests do not wait for it. Concurrent
+ * requests which need a token share a single fetch. If a fetch fails the last token keeps being
+ * served for a grace period, and the provider is not asked again before a retry delay.
+ */
+public class CachingTokenProvider implements TokenProvider {
+
+    protected static final String TAG = "CachingTokenProvider";
+
+    /** Watson tokens are valid for an hour */
+    public static final long DEFAULT_TIME_TO_LIVE = 50 * 60 * 1000;
+    public static final long DEFAULT_REFRESH_AHEAD = 5 * 60 * 1000;
+    public static final long DEFAULT_STALE_GRACE = 10 * 60 * 1000;
+    public static final long DEFAULT_RETRY_DELAY = 5 * 1000;
+
+    private final TokenProvider provider;
+    private final long timeToLive;
+    private final long refreshAhead;
+    private final long staleGrace;
+    private final long retryDelay;
+    private final Executor executor;
+
+    private String token = null;
+    /** Time (ms) after which the token is refreshed in the background */
+    private long refreshAt = 0;
+    /** Time (ms) after which the token is fetched before being used */
+    private long expiresAt = 0;
+    /** Time (ms) before which the provider is not asked again after a failure */
+    private long retryAt = 0;
+    private FutureTask<String> inFlight = null;
+    /** Timer of the next background refresh, null if none is planned */
+    private ScheduledFuture<?> scheduledRefresh = null;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    public CachingTokenProvider(TokenProvider provider) {
+        this(provider, DEFAULT_TIME_TO_LIVE, DEFAULT_REFRESH_AHEAD, DEFAULT_STALE_GRACE, DEFAULT_RETRY_DELAY, SharedExecutors.getWorkers());
+    }
+
+    /**
+     * @param provider fetches the tokens, returns null or throws a RuntimeException on failure
+     * @param timeToLive time (ms) a token is used after it was fetched
+     * @param refreshAhead time (ms) before the end of the time to live at which a background refresh starts
+     * @param staleGrace time (ms) after the end of the time to live during which the token is served if a fetch fails
+     * @param retryDelay time (ms) before the provider is asked again after a failure
+     * @param executor runs the background refreshes, the shared scheduler only starts them
+     */
+    public CachingTokenProvider(TokenProvider provider, long timeToLive, long refreshAhead, long staleGrace, long retryDelay, Executor executor) {
+        this.provider = provider;
+        this.timeToLive = timeToLive;
+        this.refreshAhead = refreshAhead;
+        this.staleGrace = staleGrace;
+        this.retryDelay = retryDelay;
+        this.executor = executor;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public String getToken() {
+        boolean refresh = false;
+        synchronized(this) {
+            long now = now();
+            if(this.token != null && now < this.expiresAt) {
+                this.hits.incrementAndGet();
+                refresh = now >= this.refreshAt && now >= this.retryAt && this.inFlight == null;
+                if(!refresh)
+                    return this.token;
+            }
+            else if(now < this.retryAt) {
+                // the provider just failed, do not wait for it again
+                return this.stale(now);
+            }
+        }
+        if(refresh) {
+            String token;
+            synchronized(this) {
+                token = this.token;
+            }
+            this.fetch(false);
+            return token;
+        }
+        String token = this.fetch(true);
+        if(token != null)
+            return token;
+        synchronized(this) {
+            return this.stale(now());
+        }
+    }
+
+    /**
+     * @return the last token if it is within its grace period, null otherwise
+     */
+    private String stale(long now) {
+        if(this.token != null && now < this.expiresAt + this.staleGrace) {
+            this.staleServed.incrementAndGet();
+            return this.token;
+        }
+        return null;
+    }
+
+    /**
+     * Start fetching a token, or join the fetch in flight
+     * @param wait true to run the fetch on the calling thread (or wait for the one in flight),
+     *             false to run it on the executor
+     * @return the token fetched, null if the fetch failed or if not waiting
+     */
+    private String fetch(boolean wait) {
+        FutureTask<String> task;
+        boolean owner = false;
+        synchronized(this) {
+            task = this.inFlight;
+            if(task == null) {
+                task = new FutureTask<String>(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return load();
+                    }
+                });
+                this.inFlight = task;
+                owner = true;
+            }
+        }
+        if(!wait) {
+            if(owner)
+                this.executor.execute(task);
+            return null;
+        }
+        if(owner)
+            task.run();
+        try {
+            return task.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            Log.e(TAG, "Token fetch failed", e.getCause());
+        }
+        return null;
+    }
+
+    private String load() {
+        this.fetches.incrementAndGet();
+        String token = null;
+        try {
+            token = this.provider.getToken();
+        } catch(RuntimeException e) {
+            Log.e(TAG, "Token provider failed: " + e.getMessage());
+        }
+        synchronized(this) {
+            long now = now();
+            if(token != null) {
+                this.token = token;
+                this.expiresAt = now + this.timeToLive;
+                this.refreshAt = this.expiresAt - this.refreshAhead;
+                this.retryAt = 0;
+                this.scheduleRefresh(this.refreshAt - now);
+            }
+            else {
+                this.failures.incrementAndGet();
+                this.retryAt = now + this.retryDelay;
+                // a background refresh failed: try again while the token is still valid
+                if(this.token != null && this.retryAt < this.expiresAt)
+                    this.scheduleRefresh(this.retryDelay);
+            }
+            this.inFlight = null;
+        }
+        return token;
+    }
+
+    /**
+     * Plan a background refresh, replacing the one planned. Called with the lock held.
+     * The scheduler must not block: it only hands the fetch to the executor.
+     * @param delay time (ms) before the refresh
+     */
+    private void scheduleRefresh(long delay) {
+        this.cancelScheduledRefresh();
+        this.scheduledRefresh = SharedExecutors.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(CachingTokenProvider.this) {
+                    if(scheduledRefresh == null || token == null)
+                        return;
+                    scheduledRefresh = null;
+                }
+                fetch(false);
+            }
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledRefresh() {
+        if(this.scheduledRefresh != null) {
+            this.scheduledRefresh.cancel(false);
+            this.scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * Fetch a token in the background if there is none yet, e.g. when the app starts
+     */
+    public void prefetch() {
+        synchronized(this) {
+            if(this.token != null && now() < this.refreshAt)
+                return;
+        }
+        this.fetch(false);
+    }
+
+    /**
+     * Drop the token, e.g. after the service rejected it, the next request fetches a new one
+     */
+    public synchronized void invalidate() {
+        this.token = null;
+        this.expiresAt = 0;
+        this.retryAt = 0;
+        this.cancelScheduledRefresh();
+    }
+
+    /**
+     * @return requests served with a cached token
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return calls to the provider
+     */
+    public long getFetches() {
+        return this.fetches.get();
+    }
+
+    /**
+     * @return calls to the provider which failed
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return requests served with an expired token because the provider failed
+     */
+    public long getStaleServed() {
+        return this.staleServed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + this.hits.get() + ", fetches: " + this.fetches.get() +
+                ", failures: " + this.failures.get() + ", stale: " + this.staleServed.get();
+    }
+}
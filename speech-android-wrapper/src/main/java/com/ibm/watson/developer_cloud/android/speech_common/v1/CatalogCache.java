@@ -0,0 +1,374 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import android.util.Log;
+
+/**
+ * Cache of the catalogs of the services (models, voices), which rarely change.
+ * Responses are kept in memory and, once a directory is set, on disk so that a cold start has them at once.
+ * A response younger than the time to live is served without a request. An older one is still served
+ * during the stale-while-revalidate period while it is revalidated in the background with If-None-Match,
+ * and after that period it is revalidated before being served. If the service cannot be reached
+ * the cached response is served whatever its age.
+ */
+public class CatalogCache {
+    private static final String TAG = CatalogCache.class.getName();
+    public static final long DEFAULT_TIME_TO_LIVE = 24 * 3600 * 1000L;
+    public static final long DEFAULT_STALE_WHILE_REVALIDATE = 30 * 24 * 3600 * 1000L;
+    private static final String SUFFIX = ".catalog";
+
+    private static final CatalogCache sharedInstance = new CatalogCache();
+
+    /**
+     * Adds the authentication header of a request, only when it is sent: a cached response needs no token
+     */
+    public interface Authenticator {
+        void authenticate(HttpGet request) throws IOException;
+    }
+
+    private static class Entry {
+        final String body;
+        final String etag;
+        /** Time (ms, wall clock since entries are persisted) the response was last validated */
+        final long validated;
+
+        Entry(String body, String etag, long validated) {
+            this.body = body;
+            this.etag = etag;
+            this.validated = validated;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    /** Urls being revalidated in the background */
+    private final Set<String> revalidating = new HashSet<String>();
+    private volatile File directory = null;
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private volatile long staleWhileRevalidate = DEFAULT_STALE_WHILE_REVALIDATE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    public static CatalogCache sharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * @param directory where responses are persisted, e.g. Context.getCacheDir(); null to keep them in memory only
+     */
+    public void setDirectory(File directory) {
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs())
+            Log.w(TAG, "Cannot create " + directory);
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * @param timeToLive time (ms) a response is served without revalidation
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @param staleWhileRevalidate time (ms) after the time to live during which a response is served while revalidated in the background
+     */
+    public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Body of the response to a GET of a catalog, from the cache if possible
+     * @param request with its authentication header, may be executed in the background
+     * @return the body of the response
+     * @throws IOException if there is no cached response and the request failed
+     */
+    public String get(HttpGet request) throws IOException {
+        return this.get(request, null);
+    }
+
+    /**
+     * Body of the response to a GET of a catalog, from the cache if possible
+     * @param request may be executed in the background
+     * @param authenticator called before the request is sent, on the thread sending it; may be null
+     * @return the body of the response
+     * @throws IOException if there is no cached response and the request failed
+     */
+    public String get(final HttpGet request, final Authenticator authenticator) throws IOException {
+        final String url = request.getURI().toString();
+        Entry entry = this.lookup(url);
+        long age = entry != null ? System.currentTimeMillis() - entry.validated : Long.MAX_VALUE;
+        if(age < this.timeToLive) {
+            this.hits.incrementAndGet();
+            return entry.body;
+        }
+        if(age - this.timeToLive < this.staleWhileRevalidate) {
+            this.hits.incrementAndGet();
+            boolean start;
+            synchronized(this) {
+                start = this.revalidating.add(url);
+            }
+            if(start) {
+                final Entry stale = entry;
+                SharedExecutors.getWorkers().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            revalidate(url, request, authenticator, stale);
+                        } catch(IOException e) {
+                            Log.w(TAG, "Revalidation of " + url + " failed: " + e.getMessage());
+                        } finally {
+                            synchronized(CatalogCache.this) {
+                                revalidating.remove(url);
+                            }
+                        }
+                    }
+                });
+            }
+            return entry.body;
+        }
+        try {
+            return this.revalidate(url, request, authenticator, entry);
+        } catch(IOException e) {
+            if(entry == null)
+                throw e;
+            Log.w(TAG, "Serving the cached " + url + ": " + e.getMessage());
+            return entry.body;
+        }
+    }
+
+    /**
+     * Request the catalog, conditionally if there is a cached response
+     * @return the body, cached or received
+     */
+    private String revalidate(String url, HttpGet request, Authenticator authenticator, Entry entry) throws IOException {
+        if(authenticator != null)
+            authenticator.authenticate(request);
+        if(entry != null && entry.etag != null)
+            request.setHeader("If-None-Match", entry.etag);
+        this.fetches.incrementAndGet();
+        HttpResponse response = SharedHttpClient.getClient().execute(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if(status == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+                this.notModified.incrementAndGet();
+                this.store(url, new Entry(entry.body, entry.etag, System.currentTimeMillis()));
+                return entry.body;
+            }
+            String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity(), "UTF-8") : "";
+            if(status == HttpStatus.SC_OK) {
+                Header etag = response.getFirstHeader("ETag");
+                this.store(url, new Entry(body, etag != null ? etag.getValue() : null, System.currentTimeMillis()));
+            }
+            // errors are returned as they used to be, but not cached
+            return body;
+        } finally {
+            SharedHttpClient.release(response);
+        }
+    }
+
+    private Entry lookup(String url) {
+        synchronized(this) {
+            Entry entry = this.entries.get(url);
+            if(entry != null)
+                return entry;
+        }
+        Entry entry = this.read(url);
+        if(entry != null) {
+            this.diskHits.incrementAndGet();
+            synchronized(this) {
+                if(!this.entries.containsKey(url))
+                    this.entries.put(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    private void store(String url, Entry entry) {
+        synchronized(this) {
+            this.entries.put(url, entry);
+        }
+        this.write(url, entry);
+    }
+
+    /**
+     * @return the file of a url, null without directory
+     */
+    private File file(String url) {
+        File directory = this.directory;
+        if(directory == null)
+            return null;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for(byte b : digest)
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return new File(directory, name.append(SUFFIX).toString());
+        } catch(NoSuchAlgorithmException | IOException e) {
+            Log.e(TAG, "Cannot name the file of " + url, e);
+            return null;
+        }
+    }
+
+    /**
+     * File format: ETag (empty if none), validation time, body
+     */
+    private Entry read(String url) {
+        File file = this.file(url);
+        if(file == null || !file.isFile())
+            return null;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String etag = reader.readLine();
+            String validated = reader.readLine();
+            if(etag == null || validated == null)
+                return null;
+            StringBuilder body = new StringBuilder((int) file.length());
+            char[] buffer = new char[4096];
+            int read;
+            while((read = reader.read(buffer)) != -1)
+                body.append(buffer, 0, read);
+            return new Entry(body.toString(), etag.length() > 0 ? etag : null, Long.parseLong(validated));
+        } catch(IOException | NumberFormatException e) {
+            Log.w(TAG, "Ignoring " + file + ": " + e.getMessage());
+            return null;
+        } finally {
+            if(reader != null) {
+                try {
+                    reader.close();
+                } catch(IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Write to a temporary file renamed over the previous one, so that a reader never sees half a response
+     */
+    private void write(String url, Entry entry) {
+        File file = this.file(url);
+        if(file == null)
+            return;
+        File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            writer.write(entry.etag != null ? entry.etag : "");
+            writer.write('\n');
+            writer.write(Long.toString(entry.validated));
+            writer.write('\n');
+            writer.write(entry.body);
+            writer.close();
+            writer = null;
+            if(!temp.renameTo(file))
+                throw new IOException("Cannot rename " + temp);
+        } catch(IOException e) {
+            Log.w(TAG, "Cannot persist " + url + ": " + e.getMessage());
+            temp.delete();
+        } finally {
+            if(writer != null) {
+                try {
+                    writer.close();
+                } catch(IOException e) {
+                    // nothing to do
+                }
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Forget every response, in memory and on disk
+     */
+    public void clear() {
+        synchronized(this) {
+            this.entries.clear();
+        }
+        File directory = this.directory;
+        File[] files = directory != null ? directory.listFiles() : null;
+        if(files != null) {
+            for(File file : files) {
+                if(file.getName().endsWith(SUFFIX))
+                    file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return responses served from the cache, fresh or stale
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return responses loaded from disk
+     */
+    public long getDiskHits() {
+        return this.diskHits.get();
+    }
+
+    /**
+     * @return requests sent to the services
+     */
+    public long getFetches() {
+        return this.fetches.get();
+    }
+
+    /**
+     * @return requests answered with 304 Not Modified
+     */
+    public long getNotModified() {
+        return this.notModified.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + this.hits.get() + ", disk: " + this.diskHits.get() +
+                ", fetches: " + this.fetches.get() + ", not modified: " + this.notModified.get();
+    }
+}
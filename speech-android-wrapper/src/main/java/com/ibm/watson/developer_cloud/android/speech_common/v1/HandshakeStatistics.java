@@ -0,0 +1,88 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the TLS handshakes and their durations, resumed sessions apart from full handshakes.
+ */
+public class HandshakeStatistics {
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong fullHandshakeTime = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakeTime = new AtomicLong();
+    /** Handshakes rejected because the host name did not match the certificate */
+    private final AtomicLong verificationFailures = new AtomicLong();
+
+    /**
+     * @param resumed true if a cached session was resumed
+     * @param duration time (ms) from the first handshake message to the end of the handshake
+     */
+    public void onHandshake(boolean resumed, long duration) {
+        if(resumed) {
+            this.resumedHandshakes.incrementAndGet();
+            this.resumedHandshakeTime.addAndGet(duration);
+        }
+        else {
+            this.fullHandshakes.incrementAndGet();
+            this.fullHandshakeTime.addAndGet(duration);
+        }
+    }
+
+    public void onVerificationFailure() {
+        this.verificationFailures.incrementAndGet();
+    }
+
+    public long getFullHandshakes() {
+        return this.fullHandshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return this.resumedHandshakes.get();
+    }
+
+    public long getVerificationFailures() {
+        return this.verificationFailures.get();
+    }
+
+    /**
+     * @return average duration (ms) of a full handshake
+     */
+    public double getAverageFullHandshakeTime() {
+        long count = this.fullHandshakes.get();
+        return count > 0 ? this.fullHandshakeTime.get() / (double) count : 0;
+    }
+
+    /**
+     * @return average duration (ms) of a resumed handshake
+     */
+    public double getAverageResumedHandshakeTime() {
+        long count = this.resumedHandshakes.get();
+        return count > 0 ? this.resumedHandshakeTime.get() / (double) count : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "full handshakes: " + getFullHandshakes()
+                + " (avg " + String.format("%.1f", getAverageFullHandshakeTime()) + "ms)"
+                + ", resumed: " + getResumedHandshakes()
+                + " (avg " + String.format("%.1f", getAverageResumedHandshakeTime()) + "ms)"
+                + ", verification failures: " + getVerificationFailures();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+/**
+ * Runs tasks one at a time and in order on a shared executor, without holding a thread while idle.
+ */
+public class SerialExecutor implements Executor {
+    private static final String TAG = SerialExecutor.class.getName();
+
+    private final Executor executor;
+    private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+    private boolean running = false;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            while(true) {
+                Runnable task;
+                synchronized(tasks) {
+                    task = tasks.poll();
+                    if(task == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "task failed: " + e.getMessage());
+                }
+            }
+        }
+    };
+
+    /**
+     * @param executor runs the queued tasks, usually SharedExecutors.getWorkers()
+     */
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized(this.tasks) {
+            this.tasks.add(task);
+            if(this.running)
+                return;
+            this.running = true;
+        }
+        this.executor.execute(this.drain);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors shared by every session of the SDK, so that timers and short background
+ * tasks do not cost a dedicated thread per connection.
+ */
+public class SharedExecutors {
+
+    private static volatile ScheduledExecutorService scheduler = null;
+    private static volatile ExecutorService workers = null;
+
+    private SharedExecutors() {}
+
+    /**
+     * Single daemon thread for short timed tasks (flush timers, timeouts...), tasks must not block
+     * @return the shared scheduler
+     */
+    public static ScheduledExecutorService getScheduler() {
+        if(scheduler == null) {
+            synchronized(SharedExecutors.class) {
+                if(scheduler == null)
+                    scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("SpeechScheduler"));
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Daemon threads created on demand for tasks that may take a while (TLS handshake computations...),
+     * idle threads are released after a minute
+     * @return the shared worker pool
+     */
+    public static ExecutorService getWorkers() {
+        if(workers == null) {
+            synchronized(SharedExecutors.class) {
+                if(workers == null)
+                    workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), new DaemonThreadFactory("SpeechWorker"));
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * Creates named daemon threads, so that idle SDK threads never keep the process alive
+     */
+    public static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        public DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, this.name + "-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
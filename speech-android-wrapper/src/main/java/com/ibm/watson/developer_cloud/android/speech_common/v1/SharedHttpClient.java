@@ -0,0 +1,158 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.util.EntityUtils;
+
+import android.util.Log;
+
+/**
+ * HTTP client shared by every REST call of the SDK (models, voices, synthesis).
+ * Connections are kept alive in a bounded thread-safe pool, so consecutive calls to a service reuse
+ * a warm connection instead of running a new TCP and TLS handshake. A connection returns to the pool
+ * only once the entity of its response is consumed: read it with executeForString() or call release().
+ */
+public class SharedHttpClient {
+    private static final String TAG = SharedHttpClient.class.getName();
+    public static final int MAX_CONNECTIONS = 8;
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 4;
+    /** Default time (ms) to establish a connection */
+    public static final int CONNECT_TIMEOUT = 10000;
+    /** Default time (ms) without data before a read fails */
+    public static final int READ_TIMEOUT = 30000;
+    /** Time (s) after which an idle connection is closed */
+    public static final int IDLE_TIMEOUT = 60;
+
+    private static volatile DefaultHttpClient client = null;
+
+    private SharedHttpClient() {}
+
+    /**
+     * @return the shared client, created on the first call
+     */
+    public static HttpClient getClient() {
+        if(client == null) {
+            synchronized(SharedHttpClient.class) {
+                if(client == null) {
+                    HttpParams params = new BasicHttpParams();
+                    HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+                    HttpProtocolParams.setContentCharset(params, "UTF-8");
+                    HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+                    HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT);
+                    HttpConnectionParams.setStaleCheckingEnabled(params, true);
+                    ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+                    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+                    // time (ms) to wait for a connection of the pool
+                    ConnManagerParams.setTimeout(params, CONNECT_TIMEOUT);
+
+                    SchemeRegistry schemes = new SchemeRegistry();
+                    schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+                    schemes.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+                    final ThreadSafeClientConnManager manager = new ThreadSafeClientConnManager(params, schemes);
+
+                    // the pool keeps connections indefinitely, close those idle for a while
+                    SharedExecutors.getScheduler().scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            manager.closeExpiredConnections();
+                            manager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS);
+                        }
+                    }, IDLE_TIMEOUT, IDLE_TIMEOUT / 2, TimeUnit.SECONDS);
+
+                    client = new DefaultHttpClient(manager, params);
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Set the timeouts of a request, instead of the defaults of the client
+     * @param request
+     * @param connectTimeout time (ms) to establish the connection
+     * @param readTimeout time (ms) without data before a read fails
+     */
+    public static void setTimeouts(HttpUriRequest request, int connectTimeout, int readTimeout) {
+        HttpConnectionParams.setConnectionTimeout(request.getParams(), connectTimeout);
+        HttpConnectionParams.setSoTimeout(request.getParams(), readTimeout);
+    }
+
+    /**
+     * Execute a request and read the whole body of its response, the connection is always released
+     * @param request
+     * @return the body of the response
+     * @throws IOException
+     */
+    public static String executeForString(HttpUriRequest request) throws IOException {
+        HttpResponse response = getClient().execute(request);
+        try {
+            HttpEntity entity = response.getEntity();
+            return entity != null ? EntityUtils.toString(entity, "UTF-8") : "";
+        } finally {
+            release(response);
+        }
+    }
+
+    /**
+     * Close the connection of a response without reading the rest of its entity, e.g. when its playback is stopped
+     * @param response may be null
+     */
+    public static void abort(HttpResponse response) {
+        if(response == null || !(response.getEntity() instanceof ConnectionReleaseTrigger))
+            return;
+        try {
+            ((ConnectionReleaseTrigger) response.getEntity()).abortConnection();
+        } catch(IOException e) {
+            Log.w(TAG, "Aborting the connection failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Consume what is left of the entity of a response, so that its connection returns to the pool
+     * @param response may be null
+     */
+    public static void release(HttpResponse response) {
+        if(response == null || response.getEntity() == null)
+            return;
+        try {
+            response.getEntity().consumeContent();
+        } catch(IOException e) {
+            Log.w(TAG, "Releasing the connection failed: " + e.getMessage());
+        }
+    }
+}
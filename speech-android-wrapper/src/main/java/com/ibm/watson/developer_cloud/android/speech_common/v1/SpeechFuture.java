@@ -0,0 +1,244 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Result of an operation of the SDK running on the shared workers.
+ * Callbacks are called once it completes, failures are reported instead of swallowed.
+ * Cancelling it, or letting its timeout expire, aborts its HTTP request.
+ */
+public class SpeechFuture<T> extends FutureTask<T> {
+
+    /**
+     * Called once the operation completes, on the executor given with the callback
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        /**
+         * @param error cause of the failure, CancellationException if cancelled, TimeoutException if timed out
+         */
+        void onFailure(Throwable error);
+    }
+
+    /**
+     * Transformation of a result, see map()
+     */
+    public interface Transform<T, R> {
+        R apply(T result) throws Exception;
+    }
+
+    /** Runs a callback on the thread completing the future */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final HttpUriRequest request;
+    /** Callbacks and their executors, null once the future is done */
+    private List<Object[]> callbacks = new ArrayList<Object[]>();
+    private ScheduledFuture<?> timeout = null;
+
+    /**
+     * @param callable the operation
+     * @param request its HTTP request, aborted on cancellation; may be null
+     */
+    public SpeechFuture(Callable<T> callable, HttpUriRequest request) {
+        super(callable);
+        this.request = request;
+    }
+
+    /**
+     * Run an operation on the shared workers
+     * @param callable
+     * @return its future
+     */
+    public static <T> SpeechFuture<T> submit(Callable<T> callable) {
+        return submit(callable, null);
+    }
+
+    /**
+     * Run an operation on the shared workers
+     * @param callable
+     * @param request its HTTP request, aborted on cancellation; may be null
+     * @return its future
+     */
+    public static <T> SpeechFuture<T> submit(Callable<T> callable, HttpUriRequest request) {
+        SpeechFuture<T> future = new SpeechFuture<T>(callable, request);
+        SharedExecutors.getWorkers().execute(future);
+        return future;
+    }
+
+    /**
+     * Fail with a TimeoutException if the operation has not completed after a delay
+     * @param timeout
+     * @param unit
+     * @return this future
+     */
+    public SpeechFuture<T> withTimeout(long timeout, TimeUnit unit) {
+        ScheduledFuture<?> scheduled = SharedExecutors.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if(!isDone()) {
+                    setException(new TimeoutException("Timed out"));
+                    abort();
+                }
+            }
+        }, timeout, unit);
+        synchronized(this) {
+            if(this.callbacks == null)
+                scheduled.cancel(false);
+            else
+                this.timeout = scheduled;
+        }
+        return this;
+    }
+
+    /**
+     * Call back on the thread completing the operation, at once if it is already completed
+     * @param callback
+     * @return this future
+     */
+    public SpeechFuture<T> addCallback(Callback<T> callback) {
+        return this.addCallback(callback, DIRECT);
+    }
+
+    /**
+     * Call back on an executor, e.g. one posting to the main thread
+     * @param callback
+     * @param executor
+     * @return this future
+     */
+    public SpeechFuture<T> addCallback(Callback<T> callback, Executor executor) {
+        synchronized(this) {
+            if(this.callbacks != null) {
+                this.callbacks.add(new Object[] {callback, executor});
+                return this;
+            }
+        }
+        this.dispatch(callback, executor);
+        return this;
+    }
+
+    /**
+     * Chain a transformation of the result, which runs on the thread completing this future
+     * @param transform
+     * @return future of the transformed result, cancelling it cancels this future
+     */
+    public <R> SpeechFuture<R> map(final Transform<T, R> transform) {
+        final SpeechFuture<T> source = this;
+        final SpeechFuture<R> mapped = new SpeechFuture<R>(new Callable<R>() {
+            @Override
+            public R call() throws Exception {
+                try {
+                    return transform.apply(source.get());
+                } catch(ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if(cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw e;
+                }
+            }
+        }, null) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                source.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        this.addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                mapped.run();
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                mapped.run();
+            }
+        });
+        return mapped;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if(cancelled)
+            this.abort();
+        return cancelled;
+    }
+
+    private void abort() {
+        if(this.request != null && !this.request.isAborted())
+            this.request.abort();
+    }
+
+    @Override
+    protected void done() {
+        List<Object[]> callbacks;
+        synchronized(this) {
+            callbacks = this.callbacks;
+            this.callbacks = null;
+            if(this.timeout != null)
+                this.timeout.cancel(false);
+        }
+        for(Object[] entry : callbacks) {
+            @SuppressWarnings("unchecked")
+            Callback<T> callback = (Callback<T>) entry[0];
+            this.dispatch(callback, (Executor) entry[1]);
+        }
+    }
+
+    private void dispatch(final Callback<T> callback, Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result;
+                try {
+                    result = get();
+                } catch(ExecutionException e) {
+                    callback.onFailure(e.getCause());
+                    return;
+                } catch(CancellationException e) {
+                    callback.onFailure(e);
+                    return;
+                } catch(InterruptedException e) {
+                    // cannot happen, the future is done
+                    Thread.currentThread().interrupt();
+                    callback.onFailure(e);
+                    return;
+                }
+                callback.onSuccess(result);
+            }
+        });
+    }
+}
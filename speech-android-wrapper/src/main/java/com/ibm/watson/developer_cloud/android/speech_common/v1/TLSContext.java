@@ -0,0 +1,106 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_common.v1;
+
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import android.util.Log;
+
+/**
+ * TLS context shared by every secure connection of the SDK.
+ * Certificates are validated against the system trust store, and the client session cache lets
+ * consecutive connections to the same host resume their TLS session instead of running a full handshake.
+ */
+public class TLSContext {
+    private static final String TAG = TLSContext.class.getName();
+    /** Number of sessions kept in the client cache */
+    public static final int SESSION_CACHE_SIZE = 16;
+    /** Lifetime (s) of a cached session */
+    public static final int SESSION_TIMEOUT = 3600;
+
+    private static volatile SSLContext sslContext = null;
+    private static final HandshakeStatistics statistics = new HandshakeStatistics();
+
+    private TLSContext() {}
+
+    /**
+     * @return the shared context, created on the first call
+     * @throws GeneralSecurityException
+     */
+    public static SSLContext getSSLContext() throws GeneralSecurityException {
+        if(sslContext == null) {
+            synchronized(TLSContext.class) {
+                if(sslContext == null) {
+                    SSLContext context = SSLContext.getInstance("TLS");
+                    // default key and trust managers: the system trust store validates the server
+                    context.init(null, null, null);
+                    SSLSessionContext sessions = context.getClientSessionContext();
+                    if(sessions != null) {
+                        sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+                        sessions.setSessionTimeout(SESSION_TIMEOUT);
+                    }
+                    sslContext = context;
+                }
+            }
+        }
+        return sslContext;
+    }
+
+    /**
+     * An SSLEngine does not check the host name, secure channels check it once the handshake is done
+     * @return the verifier used by HttpsURLConnection
+     */
+    public static HostnameVerifier getHostnameVerifier() {
+        return HttpsURLConnection.getDefaultHostnameVerifier();
+    }
+
+    /**
+     * Check the host name of a completed handshake and record its duration,
+     * to be called before any application data is sent
+     *
+     * @param host host name the connection was opened to
+     * @param session session negotiated by the handshake
+     * @param start time (ms) the handshake started
+     * @throws SSLPeerUnverifiedException if the certificate does not match the host name
+     */
+    public static void onHandshakeFinished(String host, SSLSession session, long start) throws SSLPeerUnverifiedException {
+        if(!getHostnameVerifier().verify(host, session)) {
+            statistics.onVerificationFailure();
+            Log.e(TAG, "certificate does not match " + host);
+            throw new SSLPeerUnverifiedException("Certificate does not match " + host);
+        }
+        long duration = System.currentTimeMillis() - start;
+        // a resumed session was created by an earlier connection
+        boolean resumed = session.getCreationTime() < start;
+        statistics.onHandshake(resumed, duration);
+        Log.d(TAG, (resumed ? "resumed" : "full") + " TLS handshake with " + host + " in " + duration + "ms");
+    }
+
+    /**
+     * @return durations of the handshakes made with the shared context
+     */
+    public static HandshakeStatistics getHandshakeStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Calls a delegate one event at a time and in order on an executor, so that a slow delegate does not
+ * stall the connection. An interim result still waiting for the delegate is skipped when a newer
+ * hypothesis (interim or final) for the same result_index arrives; final results, open, close and
+ * error events are always delivered.
+ */
+public class DelegateDispatcher implements ISpeechDelegate, IUtteranceDelegate {
+
+    protected static final String TAG = "DelegateDispatcher";
+
+    private final ISpeechDelegate target;
+    private final Executor executor;
+    private final ArrayDeque<Event> events = new ArrayDeque<Event>();
+    /** Interim results waiting in the queue, by result_index */
+    private final Map<Integer, Event> pendingInterims = new HashMap<Integer, Event>();
+    private boolean running = false;
+    /** Interim results skipped because a newer one arrived first */
+    private final AtomicLong conflated = new AtomicLong();
+
+    /**
+     * An event for the delegate
+     */
+    private abstract static class Event {
+        /** result_index of an interim result, -1 for the other events */
+        int interimIndex = -1;
+        /** Set when a newer hypothesis replaces the interim result */
+        boolean superseded = false;
+
+        abstract void deliver();
+    }
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            while(true) {
+                Event event;
+                boolean superseded;
+                synchronized(events) {
+                    event = events.poll();
+                    if(event == null) {
+                        running = false;
+                        return;
+                    }
+                    if(event.interimIndex >= 0 && pendingInterims.get(event.interimIndex) == event)
+                        pendingInterims.remove(event.interimIndex);
+                    superseded = event.superseded;
+                }
+                if(superseded)
+                    continue;
+                try {
+                    event.deliver();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "delegate failed: " + e.getMessage());
+                }
+            }
+        }
+    };
+
+    /**
+     * @param target delegate of the application
+     * @param executor runs the callbacks, e.g. SharedExecutors.getWorkers() or the main thread
+     */
+    public DelegateDispatcher(ISpeechDelegate target, Executor executor) {
+        this.target = target;
+        this.executor = executor;
+    }
+
+    private void offer(Event event) {
+        synchronized(this.events) {
+            if(!this.enqueue(event))
+                return;
+        }
+        this.executor.execute(this.drain);
+    }
+
+    /**
+     * @return true if the queue has to be drained
+     */
+    private boolean enqueue(Event event) {
+        this.events.add(event);
+        if(this.running)
+            return false;
+        this.running = true;
+        return true;
+    }
+
+    @Override
+    public void onOpen() {
+        this.offer(new Event() {
+            @Override
+            void deliver() {
+                target.onOpen();
+            }
+        });
+    }
+
+    @Override
+    public void onError(final String error) {
+        this.offer(new Event() {
+            @Override
+            void deliver() {
+                target.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public void onClose(final int code, final String reason, final boolean remote) {
+        this.offer(new Event() {
+            @Override
+            void deliver() {
+                target.onClose(code, reason, remote);
+            }
+        });
+    }
+
+    @Override
+    public void onMessage(final String message) {
+        this.offerMessage(new Event() {
+            @Override
+            void deliver() {
+                RecognitionResultParser.deliver(target, message);
+            }
+        }, message);
+    }
+
+    /**
+     * Same as onMessage(message), with the results already parsed by the connection
+     * @param message
+     * @param results results of the message, null if it carries none
+     */
+    void onMessage(final String message, final RecognitionResult[] results) {
+        this.offerMessage(new Event() {
+            @Override
+            void deliver() {
+                RecognitionResultParser.deliver(target, message, results);
+            }
+        }, message);
+    }
+
+    private void offerMessage(Event event, String message) {
+        int index = resultIndex(message);
+        int isFinal = index >= 0 ? finalFlag(message) : -1;
+        boolean drain;
+        synchronized(this.events) {
+            if(isFinal >= 0) {
+                // the pending interim result of the same index is out of date
+                Event previous = this.pendingInterims.remove(index);
+                if(previous != null) {
+                    previous.superseded = true;
+                    this.conflated.incrementAndGet();
+                }
+                if(isFinal == 0) {
+                    event.interimIndex = index;
+                    this.pendingInterims.put(index, event);
+                }
+            }
+            drain = this.enqueue(event);
+        }
+        if(drain)
+            this.executor.execute(this.drain);
+    }
+
+    /**
+     * Called directly, the amplitude does not come from the connection
+     */
+    @Override
+    public void onAmplitude(double amplitude, double volume) {
+        this.target.onAmplitude(amplitude, volume);
+    }
+
+    @Override
+    public void onUtteranceStart(final int utterance) {
+        if(!(this.target instanceof IUtteranceDelegate))
+            return;
+        this.offer(new Event() {
+            @Override
+            void deliver() {
+                ((IUtteranceDelegate) target).onUtteranceStart(utterance);
+            }
+        });
+    }
+
+    @Override
+    public void onUtteranceEnd(final int utterance) {
+        if(!(this.target instanceof IUtteranceDelegate))
+            return;
+        this.offer(new Event() {
+            @Override
+            void deliver() {
+                ((IUtteranceDelegate) target).onUtteranceEnd(utterance);
+            }
+        });
+    }
+
+    /**
+     * @return the delegate of the application
+     */
+    public ISpeechDelegate getTarget() {
+        return this.target;
+    }
+
+    /**
+     * @return number of interim results skipped because the delegate was behind
+     */
+    public long getConflatedResults() {
+        return this.conflated.get();
+    }
+
+    /**
+     * @return result_index of a result message, -1 for the other messages
+     */
+    static int resultIndex(String message) {
+        int value = valueOf(message, "\"result_index\"", 0);
+        if(value < 0)
+            return -1;
+        int index = 0;
+        int digits = 0;
+        while(value < message.length() && Character.isDigit(message.charAt(value))) {
+            index = index * 10 + (message.charAt(value++) - '0');
+            digits++;
+        }
+        return digits > 0 ? index : -1;
+    }
+
+    /**
+     * @return 1 for a single final result, 0 for a single interim result, -1 otherwise
+     */
+    static int finalFlag(String message) {
+        int value = valueOf(message, "\"final\"", 0);
+        if(value < 0 || valueOf(message, "\"final\"", value) >= 0)
+            return -1;
+        return message.startsWith("true", value) ? 1 : 0;
+    }
+
+    /**
+     * Find a key without parsing the message, a transcript containing the key is not followed by a colon
+     * @return position of the value of the first occurrence of the key, -1 if there is none
+     */
+    private static int valueOf(String message, String key, int from) {
+        while(true) {
+            int found = message.indexOf(key, from);
+            if(found < 0)
+                return -1;
+            int i = found + key.length();
+            while(i < message.length() && Character.isWhitespace(message.charAt(i)))
+                i++;
+            if(i < message.length() && message.charAt(i) == ':') {
+                i++;
+                while(i < message.length() && Character.isWhitespace(message.charAt(i)))
+                    i++;
+                return i;
+            }
+            from = found + 1;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Optional typed results.
+ * An ISpeechDelegate that also implements this interface receives the results already parsed,
+ * right after the raw message is passed to onMessage.
+ */
+public interface IResultDelegate {
+
+    /**
+     * called for every message carrying results
+     */
+    void onResults(RecognitionResult[] results);
+}
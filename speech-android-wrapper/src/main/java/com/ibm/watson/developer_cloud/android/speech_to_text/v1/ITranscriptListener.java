@@ -0,0 +1,39 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+/**
+ * Changes of a TranscriptAssembler, to apply to a displayed text (e.g. an Editable) without rebuilding it.
+ * The changes are minimal: only the part of the interim hypothesis that differs is replaced.
+ */
+public interface ITranscriptListener {
+
+    /**
+     * called when text is added at the end of the transcript
+     */
+    void onAppend(String text);
+
+    /**
+     * called when the transcript from offset to its end is replaced by text
+     */
+    void onReplaceTail(int offset, String text);
+
+    /**
+     * called when a final result arrives, the first length characters will not change anymore
+     */
+    void onFinalized(int length);
+}
@@ -0,0 +1,34 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+/**
+ * Optional callbacks for the utterances of a persistent session.
+ * An ISpeechDelegate that also implements this interface is told when each utterance starts and ends.
+ */
+public interface IUtteranceDelegate {
+
+    /**
+     * called once the start message of an utterance has been sent
+     */
+    void onUtteranceStart(int utterance);
+
+    /**
+     * called once the STT service has returned every result of an utterance
+     */
+    void onUtteranceEnd(int utterance);
+}
@@ -0,0 +1,470 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionAlternative;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Reads the results messages of the STT service in one pass, without building a JSON tree:
+ * keys are matched in place, unknown values are skipped, numbers are read without intermediate
+ * strings and the word timings go into primitive arrays. Each thread reuses its own parser.
+ * (android.util.JsonReader needs API 11, the SDK supports API 9.)
+ */
+public class RecognitionResultParser {
+
+    private static final String[] KEYS = {"results", "result_index", "final", "alternatives", "transcript", "confidence", "timestamps", "word_confidence"};
+    private static final int KEY_UNKNOWN = -1;
+    private static final int KEY_RESULTS = 0;
+    private static final int KEY_RESULT_INDEX = 1;
+    private static final int KEY_FINAL = 2;
+    private static final int KEY_ALTERNATIVES = 3;
+    private static final int KEY_TRANSCRIPT = 4;
+    private static final int KEY_CONFIDENCE = 5;
+    private static final int KEY_TIMESTAMPS = 6;
+    private static final int KEY_WORD_CONFIDENCE = 7;
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private static final ThreadLocal<RecognitionResultParser> PARSERS = new ThreadLocal<RecognitionResultParser>() {
+        @Override
+        protected RecognitionResultParser initialValue() {
+            return new RecognitionResultParser();
+        }
+    };
+
+    private String json;
+    private int pos;
+
+    /** Words and times of the timestamps of the current alternative */
+    private String[] timedWords = new String[32];
+    private double[] startTimes = new double[32];
+    private double[] endTimes = new double[32];
+    private int timedCount;
+    /** Words and confidences of the word_confidence of the current alternative */
+    private String[] confidenceWords = new String[32];
+    private double[] confidences = new double[32];
+    private int confidenceCount;
+
+    private RecognitionResultParser() {
+    }
+
+    /**
+     * @param message a message of the STT service
+     * @return the results of the message, null if it carries no results or is not valid JSON
+     */
+    public static RecognitionResult[] parse(String message) {
+        if(message.indexOf("\"results\"") < 0)
+            return null;
+        RecognitionResultParser parser = PARSERS.get();
+        try {
+            return parser.parseMessage(message);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        } finally {
+            parser.json = null;
+        }
+    }
+
+    /**
+     * Pass a message to the delegate, and its typed results if the delegate implements IResultDelegate
+     * @param delegate
+     * @param message
+     */
+    public static void deliver(ISpeechDelegate delegate, String message) {
+        delegate.onMessage(message);
+        if(delegate instanceof IResultDelegate) {
+            RecognitionResult[] results = parse(message);
+            if(results != null)
+                ((IResultDelegate) delegate).onResults(results);
+        }
+    }
+
+    /**
+     * Pass a message whose results are already parsed, so that they are not parsed again
+     * @param delegate
+     * @param message
+     * @param results results of the message, null if it carries none
+     */
+    public static void deliver(ISpeechDelegate delegate, String message, RecognitionResult[] results) {
+        if(delegate instanceof DelegateDispatcher) {
+            ((DelegateDispatcher) delegate).onMessage(message, results);
+            return;
+        }
+        delegate.onMessage(message);
+        if(results != null && delegate instanceof IResultDelegate)
+            ((IResultDelegate) delegate).onResults(results);
+    }
+
+    private RecognitionResult[] parseMessage(String message) {
+        this.json = message;
+        this.pos = 0;
+        int resultIndex = 0;
+        ArrayList<RecognitionAlternative[]> alternatives = null;
+        boolean[] finals = null;
+        this.expect('{');
+        if(this.peek() != '}') {
+            do {
+                int key = this.readKey();
+                if(key == KEY_RESULTS) {
+                    alternatives = new ArrayList<RecognitionAlternative[]>(1);
+                    finals = new boolean[1];
+                    this.expect('[');
+                    if(this.peek() != ']') {
+                        do {
+                            if(alternatives.size() == finals.length)
+                                finals = Arrays.copyOf(finals, finals.length * 2);
+                            finals[alternatives.size()] = this.parseResult(alternatives);
+                        } while(this.next(','));
+                    }
+                    this.expect(']');
+                }
+                else if(key == KEY_RESULT_INDEX) {
+                    resultIndex = (int) this.readNumber();
+                }
+                else {
+                    this.skipValue();
+                }
+            } while(this.next(','));
+        }
+        this.expect('}');
+        if(alternatives == null)
+            return null;
+        // result_index usually follows the results
+        RecognitionResult[] results = new RecognitionResult[alternatives.size()];
+        for(int i = 0; i < results.length; i++)
+            results[i] = new RecognitionResult(resultIndex + i, finals[i], alternatives.get(i));
+        return results;
+    }
+
+    /**
+     * @return the final flag, the alternatives are added to the list
+     */
+    private boolean parseResult(ArrayList<RecognitionAlternative[]> results) {
+        boolean isFinal = false;
+        RecognitionAlternative[] alternatives = new RecognitionAlternative[0];
+        this.expect('{');
+        if(this.peek() != '}') {
+            do {
+                int key = this.readKey();
+                if(key == KEY_FINAL) {
+                    isFinal = this.readBoolean();
+                }
+                else if(key == KEY_ALTERNATIVES) {
+                    ArrayList<RecognitionAlternative> list = new ArrayList<RecognitionAlternative>(4);
+                    this.expect('[');
+                    if(this.peek() != ']') {
+                        do {
+                            list.add(this.parseAlternative());
+                        } while(this.next(','));
+                    }
+                    this.expect(']');
+                    alternatives = list.toArray(alternatives);
+                }
+                else {
+                    this.skipValue();
+                }
+            } while(this.next(','));
+        }
+        this.expect('}');
+        results.add(alternatives);
+        return isFinal;
+    }
+
+    private RecognitionAlternative parseAlternative() {
+        String transcript = "";
+        double confidence = Double.NaN;
+        boolean timed = false;
+        boolean confident = false;
+        this.timedCount = 0;
+        this.confidenceCount = 0;
+        this.expect('{');
+        if(this.peek() != '}') {
+            do {
+                int key = this.readKey();
+                if(key == KEY_TRANSCRIPT) {
+                    transcript = this.readString();
+                }
+                else if(key == KEY_CONFIDENCE) {
+                    confidence = this.readNumber();
+                }
+                else if(key == KEY_TIMESTAMPS) {
+                    timed = true;
+                    this.parseTimestamps();
+                }
+                else if(key == KEY_WORD_CONFIDENCE) {
+                    confident = true;
+                    this.parseWordConfidences();
+                }
+                else {
+                    this.skipValue();
+                }
+            } while(this.next(','));
+        }
+        this.expect('}');
+        String[] words = null;
+        if(timed)
+            words = Arrays.copyOf(this.timedWords, this.timedCount);
+        else if(confident)
+            words = Arrays.copyOf(this.confidenceWords, this.confidenceCount);
+        return new RecognitionAlternative(transcript, confidence, words,
+                timed ? Arrays.copyOf(this.startTimes, this.timedCount) : null,
+                timed ? Arrays.copyOf(this.endTimes, this.timedCount) : null,
+                confident ? Arrays.copyOf(this.confidences, this.confidenceCount) : null);
+    }
+
+    /**
+     * [["word", start, end], ...]
+     */
+    private void parseTimestamps() {
+        this.expect('[');
+        if(this.peek() != ']') {
+            do {
+                if(this.timedCount == this.timedWords.length) {
+                    int size = this.timedCount * 2;
+                    this.timedWords = Arrays.copyOf(this.timedWords, size);
+                    this.startTimes = Arrays.copyOf(this.startTimes, size);
+                    this.endTimes = Arrays.copyOf(this.endTimes, size);
+                }
+                this.expect('[');
+                this.timedWords[this.timedCount] = this.readString();
+                this.expect(',');
+                this.startTimes[this.timedCount] = this.readNumber();
+                this.expect(',');
+                this.endTimes[this.timedCount] = this.readNumber();
+                this.expect(']');
+                this.timedCount++;
+            } while(this.next(','));
+        }
+        this.expect(']');
+    }
+
+    /**
+     * [["word", confidence], ...]
+     */
+    private void parseWordConfidences() {
+        this.expect('[');
+        if(this.peek() != ']') {
+            do {
+                if(this.confidenceCount == this.confidenceWords.length) {
+                    int size = this.confidenceCount * 2;
+                    this.confidenceWords = Arrays.copyOf(this.confidenceWords, size);
+                    this.confidences = Arrays.copyOf(this.confidences, size);
+                }
+                this.expect('[');
+                this.confidenceWords[this.confidenceCount] = this.readString();
+                this.expect(',');
+                this.confidences[this.confidenceCount] = this.readNumber();
+                this.expect(']');
+                this.confidenceCount++;
+            } while(this.next(','));
+        }
+        this.expect(']');
+    }
+
+    private void skipWhitespace() {
+        while(this.pos < this.json.length()) {
+            char c = this.json.charAt(this.pos);
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return;
+            this.pos++;
+        }
+    }
+
+    private char peek() {
+        this.skipWhitespace();
+        return this.json.charAt(this.pos);
+    }
+
+    private void expect(char c) {
+        if(this.peek() != c)
+            throw new IllegalArgumentException("'" + c + "' expected at " + this.pos);
+        this.pos++;
+    }
+
+    /**
+     * @return true if the next character is c, which is consumed
+     */
+    private boolean next(char c) {
+        if(this.peek() != c)
+            return false;
+        this.pos++;
+        return true;
+    }
+
+    /**
+     * Read a key and its colon, known keys are compared in place
+     * @return index of the key in KEYS, KEY_UNKNOWN for the others
+     */
+    private int readKey() {
+        this.expect('"');
+        int start = this.pos;
+        int end = this.stringEnd(start);
+        int key = KEY_UNKNOWN;
+        if(this.json.charAt(end) == '\\') {
+            // escaped key, decoded the slow way
+            this.pos = start - 1;
+            key = Arrays.asList(KEYS).indexOf(this.readString());
+        }
+        else {
+            int length = end - start;
+            for(int i = 0; i < KEYS.length; i++) {
+                if(KEYS[i].length() == length && this.json.regionMatches(start, KEYS[i], 0, length)) {
+                    key = i;
+                    break;
+                }
+            }
+            this.pos = end + 1;
+        }
+        this.expect(':');
+        return key;
+    }
+
+    private String readString() {
+        this.expect('"');
+        int start = this.pos;
+        int end = this.stringEnd(start);
+        if(this.json.charAt(end) == '"') {
+            this.pos = end + 1;
+            return this.json.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start + 16);
+        while(true) {
+            char c = this.json.charAt(this.pos++);
+            if(c == '"')
+                return sb.toString();
+            if(c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = this.json.charAt(this.pos++);
+            switch(c) {
+            case 'n': sb.append('\n'); break;
+            case 't': sb.append('\t'); break;
+            case 'r': sb.append('\r'); break;
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'u':
+                sb.append((char) Integer.parseInt(this.json.substring(this.pos, this.pos + 4), 16));
+                this.pos += 4;
+                break;
+            default: sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return position of the closing quote of a string, or of its first backslash
+     */
+    private int stringEnd(int start) {
+        int length = this.json.length();
+        for(int i = start; i < length; i++) {
+            char c = this.json.charAt(i);
+            if(c == '"' || c == '\\')
+                return i;
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private boolean readBoolean() {
+        char c = this.peek();
+        if(this.json.startsWith("true", this.pos)) {
+            this.pos += 4;
+            return true;
+        }
+        if(this.json.startsWith("false", this.pos)) {
+            this.pos += 5;
+            return false;
+        }
+        if(this.json.startsWith("null", this.pos)) {
+            this.pos += 4;
+            return false;
+        }
+        throw new IllegalArgumentException("unexpected '" + c + "' at " + this.pos);
+    }
+
+    /**
+     * Read a number without creating a string, when its digits fit in a double exactly
+     */
+    private double readNumber() {
+        this.skipWhitespace();
+        int start = this.pos;
+        boolean negative = this.json.charAt(this.pos) == '-';
+        if(negative)
+            this.pos++;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int length = this.json.length();
+        while(this.pos < length) {
+            char c = this.json.charAt(this.pos);
+            if(c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if(fraction)
+                    scale++;
+            }
+            else if(c == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                break;
+            }
+            this.pos++;
+        }
+        if(digits == 0)
+            throw new IllegalArgumentException("number expected at " + start);
+        if(this.pos < length && (this.json.charAt(this.pos) == 'e' || this.json.charAt(this.pos) == 'E') || digits > 15) {
+            // rare: exponent or too many digits
+            while(this.pos < length && "+-0123456789.eE".indexOf(this.json.charAt(this.pos)) >= 0)
+                this.pos++;
+            return Double.parseDouble(this.json.substring(start, this.pos));
+        }
+        // both operands are exact, the division is correctly rounded
+        double value = mantissa / POW10[scale];
+        return negative ? -value : value;
+    }
+
+    private void skipValue() {
+        char c = this.peek();
+        if(c == '"') {
+            this.readString();
+        }
+        else if(c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            this.pos++;
+            if(this.peek() != close) {
+                do {
+                    if(c == '{')
+                        this.readKey();
+                    this.skipValue();
+                } while(this.next(','));
+            }
+            this.expect(close);
+        }
+        else if(c == 't' || c == 'f' || c == 'n') {
+            this.readBoolean();
+        }
+        else {
+            this.readNumber();
+        }
+    }
+}
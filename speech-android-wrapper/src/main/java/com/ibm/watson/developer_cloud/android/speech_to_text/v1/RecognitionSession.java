@@ -0,0 +1,361 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.AudioCaptureThread;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.IAudioConsumer;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.IChunkUploader;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.RecognitionTimeline;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.UploadStatistics;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.WebSocketUploader;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
+
+/**
+ * One recognition at a time, with its own capture thread, encoder, uploader and delegate.
+ * Sessions are created by a SpeechClient and run independently of each other.
+ */
+public class RecognitionSession {
+
+    protected static final String TAG = "RecognitionSession";
+    private final SpeechClient client;
+    private volatile SpeechConfiguration sConfig;
+    private AudioCaptureThread audioCaptureThread = null;
+    private IChunkUploader uploader = null;
+    private volatile ISpeechDelegate delegate = null;
+    private volatile String model;
+    /** Connection opened ahead of the next recognize() */
+    private WebSocketUploader warmUploader = null;
+    /** Replaces the warm connection before the server drops it */
+    private ScheduledFuture<?> warmUploaderExpiry = null;
+    /** Keep a warm connection ready between recognitions */
+    private boolean keepWarm = false;
+    /** Number of the last warm connection requested, the uploaders of the previous requests are discarded */
+    private int warmRequest = 0;
+    /** Set while the last warm connection requested is being created on a worker */
+    private boolean warmOpening = false;
+
+    /**
+     * @param client
+     * @param sc configuration of the session, null to use the one of the client
+     */
+    RecognitionSession(SpeechClient client, SpeechConfiguration sc) {
+        this.client = client;
+        this.sConfig = sc;
+    }
+
+    /**
+     * Audio consumer
+     */
+    private class STTIAudioConsumer implements IAudioConsumer {
+        private IChunkUploader mUploader = null;
+
+        public STTIAudioConsumer(IChunkUploader uploader) {
+            mUploader = uploader;
+        }
+
+        public void consume(byte [] data) {
+            mUploader.onHasData(data);
+        }
+
+        @Override
+        public void onAmplitude(double amplitude, double volume) {
+            ISpeechDelegate delegate = RecognitionSession.this.delegate;
+            if(delegate != null){
+                delegate.onAmplitude(amplitude, volume);
+            }
+        }
+    }
+
+    /**
+     * Start recording
+     */
+    private void startRecording() {
+        uploader.prepare();
+        STTIAudioConsumer audioConsumer = new STTIAudioConsumer(uploader);
+
+        audioCaptureThread = new AudioCaptureThread(SpeechConfiguration.SAMPLE_RATE, audioConsumer);
+        audioCaptureThread.start();
+    }
+
+    /**
+     * Reuse the open connection of a persistent session, or take the warm one, or create a new one
+     * @return false if no uploader could be created
+     */
+    private boolean openUploader() {
+        try {
+            if(this.getConfiguration().persistentSession && uploader != null && !uploader.isConnectionLost()) {
+                // next utterance on the open connection
+                uploader.setDelegate(this.delegate);
+                return true;
+            }
+            uploader = this.takeWarmUploader();
+            if(uploader == null)
+                uploader = this.client.createUploader(this.model, this.getConfiguration());
+            uploader.setDelegate(this.delegate);
+            return true;
+        } catch (URISyntaxException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Start recording audio from the microphone
+     */
+    public synchronized void recognize() {
+        Log.d(TAG, "recognize");
+        if(this.openUploader())
+            this.startRecording();
+    }
+
+    /**
+     * Start a recognition fed by writeAudio() instead of the microphone
+     */
+    public synchronized void recognizeStream() {
+        Log.d(TAG, "recognizeStream");
+        if(this.openUploader())
+            uploader.prepare();
+    }
+
+    /**
+     * Send audio of a recognition started by recognizeStream()
+     * @param data 16 kHz, 16 bit, mono, little endian PCM
+     */
+    public void writeAudio(byte[] data) {
+        IChunkUploader uploader;
+        synchronized(this) {
+            uploader = this.uploader;
+        }
+        if(uploader != null)
+            uploader.onHasData(data);
+    }
+
+    /**
+     * Open a connection ahead of time, so that the next recognize() streams without waiting for the
+     * DNS lookup, TCP and TLS handshakes and the WebSocket upgrade.
+     * The connection is replaced before it expires, and a new one is opened after each recognition
+     * until coolDown() is called.
+     * Credentials, model and configuration must be set before calling it.
+     */
+    public synchronized void warmUp() {
+        this.keepWarm = true;
+        if(this.warmUploader == null && !this.warmOpening)
+            this.openWarmUploader();
+    }
+
+    /**
+     * Stop keeping a warm connection and close the idle one
+     */
+    public synchronized void coolDown() {
+        this.keepWarm = false;
+        this.discardWarmUploader();
+    }
+
+    /**
+     * Create the warm connection on a worker: asking for a token may be a network request, which
+     * must not run on the caller, on the scheduler or under the lock of the session
+     */
+    private synchronized void openWarmUploader() {
+        final int request = ++this.warmRequest;
+        final String model = this.model;
+        final SpeechConfiguration config = this.getConfiguration();
+        this.warmOpening = true;
+        SharedExecutors.getWorkers().execute(new Runnable() {
+            @Override
+            public void run() {
+                WebSocketUploader warm = null;
+                try {
+                    warm = client.createUploader(model, config);
+                } catch (URISyntaxException e) {
+                    e.printStackTrace();
+                }
+                onWarmUploaderCreated(request, warm, config);
+            }
+        });
+    }
+
+    /**
+     * Keep the warm connection created on a worker, unless it was discarded or replaced meanwhile
+     */
+    private synchronized void onWarmUploaderCreated(int request, WebSocketUploader warm, SpeechConfiguration config) {
+        if(request != this.warmRequest) {
+            if(warm != null)
+                warm.close();
+            return;
+        }
+        this.warmOpening = false;
+        if(warm == null)
+            return;
+        if(!this.keepWarm || this.warmUploader != null) {
+            warm.close();
+            return;
+        }
+        this.warmUploader = warm;
+        this.warmUploader.preconnect();
+        this.warmUploaderExpiry = SharedExecutors.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                onWarmUploaderExpired();
+            }
+        }, config.warmConnectionTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onWarmUploaderExpired() {
+        Log.d(TAG, "warm connection expired");
+        this.discardWarmUploader();
+        if(this.keepWarm)
+            this.openWarmUploader();
+    }
+
+    private synchronized void discardWarmUploader() {
+        // a warm connection being created is dropped when it arrives
+        this.warmRequest++;
+        this.warmOpening = false;
+        if(this.warmUploaderExpiry != null) {
+            this.warmUploaderExpiry.cancel(false);
+            this.warmUploaderExpiry = null;
+        }
+        if(this.warmUploader != null) {
+            this.warmUploader.close();
+            this.warmUploader = null;
+        }
+    }
+
+    /**
+     * Hand over the warm connection, unless it was closed by the server
+     * @return the warm uploader, null if there is none
+     */
+    private synchronized WebSocketUploader takeWarmUploader() {
+        WebSocketUploader warm = this.warmUploader;
+        if(warm == null)
+            return null;
+        if(this.warmUploaderExpiry != null) {
+            this.warmUploaderExpiry.cancel(false);
+            this.warmUploaderExpiry = null;
+        }
+        this.warmUploader = null;
+        if(warm.isConnectionLost()) {
+            Log.d(TAG, "warm connection lost, opening a new one");
+            warm.close();
+            return null;
+        }
+        return warm;
+    }
+
+    /**
+     * Stop audio recording
+     */
+    public synchronized void stopRecording(){
+        if(audioCaptureThread != null)
+            audioCaptureThread.end();
+    }
+
+    /**
+     * Stop recognition, in a persistent session the connection stays open for the next utterance
+     */
+    public synchronized void stopRecognition() {
+        this.stopRecording();
+        boolean persistent = this.getConfiguration().persistentSession;
+        if(uploader != null) {
+            uploader.stop();
+            if(!persistent)
+                uploader.close();
+        }
+        if(this.keepWarm && !persistent && this.warmUploader == null && !this.warmOpening)
+            this.openWarmUploader();
+    }
+
+    /**
+     * Close the connection of a persistent session without waiting for its idle timeout
+     */
+    public synchronized void closeSession() {
+        if(uploader != null)
+            uploader.close();
+    }
+
+    /**
+     * Outbound traffic counters of the current (or last) recognition
+     * @return statistics, null if recognize() has not been called yet
+     */
+    public synchronized UploadStatistics getUploadStatistics() {
+        return uploader != null ? uploader.getStatistics() : null;
+    }
+
+    /**
+     * Steps of the current (or last) recognition, from the request to the last result
+     * @return timeline, null if recognize() has not been called yet
+     */
+    public synchronized RecognitionTimeline getTimeline() {
+        return uploader != null ? uploader.getTimeline() : null;
+    }
+
+    /**
+     * @return the client which created the session
+     */
+    public SpeechClient getClient() {
+        return client;
+    }
+    /**
+     * @return the configuration of the session, or the one of the client
+     */
+    public SpeechConfiguration getConfiguration() {
+        SpeechConfiguration sc = this.sConfig;
+        return sc != null ? sc : this.client.getConfiguration();
+    }
+    /**
+     * @param sc the configuration of the session
+     */
+    public void setConfiguration(SpeechConfiguration sc) {
+        this.sConfig = sc;
+    }
+    /**
+     * @return the delegate
+     */
+    public ISpeechDelegate getDelegate() {
+        return delegate;
+    }
+    /**
+     * @param val the delegate to set
+     */
+    public void setDelegate(ISpeechDelegate val) {
+        this.delegate = val;
+    }
+    /**
+     * @return the STT model
+     */
+    public String getModel() {
+        return model;
+    }
+    /**
+     * Set STT model
+     */
+    public synchronized void setModel(String model) {
+        this.model = model;
+        // the warm connection was opened for the previous model
+        if(this.warmUploader != null || this.warmOpening) {
+            this.discardWarmUploader();
+            this.openWarmUploader();
+        }
+    }
+}
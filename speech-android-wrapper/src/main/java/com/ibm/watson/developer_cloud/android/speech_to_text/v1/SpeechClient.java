@@ -0,0 +1,380 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.auth.BasicScheme;
+import org.java_websocket.util.Base64;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.HandshakeStatistics;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedHttpClient;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SpeechFuture;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.CatalogCache;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.TLSContext;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.TokenProvider;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.LatencyStatistics;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.WebSocketUploader;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
+
+/**
+ * Thread safe entry point of the speech to text service, creating independent recognition sessions.
+ * The client holds the service address, the credentials and the default configuration; every session
+ * shares the TLS context, the executors and the token provider of the process.
+ */
+public class SpeechClient {
+
+    protected static final String TAG = "SpeechClient";
+    /** Model information requests run at once by prefetchModelInfos */
+    public static final int PREFETCH_PARALLELISM = SharedHttpClient.MAX_CONNECTIONS_PER_ROUTE;
+    private volatile URI hostURL;
+    private volatile Context appCtx;
+    private volatile SpeechConfiguration sConfig;
+    private String username;
+    private String password;
+    private volatile TokenProvider tokenProvider = null;
+    /** Steps of the recognitions completed by the sessions of the client */
+    private final LatencyStatistics latencyStatistics = new LatencyStatistics();
+
+    /**
+     * Constructor, the address and configuration are set with initWithContext
+     */
+    public SpeechClient() {
+        this.sConfig = null;
+    }
+
+    /**
+     * Constructor
+     * @param uri
+     * @param ctx
+     * @param sc default configuration of the sessions
+     */
+    public SpeechClient(URI uri, Context ctx, SpeechConfiguration sc) {
+        this.initWithContext(uri, ctx, sc);
+    }
+
+    /**
+     * Init the client with the context
+     * @param uri
+     * @param ctx
+     * @param sc
+     */
+    public void initWithContext(URI uri, Context ctx, SpeechConfiguration sc) {
+        this.setHostURL(uri);
+        this.appCtx = ctx;
+        this.sConfig = sc;
+        // persist the catalogs in the cache directory of the app, so that a cold start has them at once
+        CatalogCache catalogs = CatalogCache.sharedInstance();
+        if(ctx != null && catalogs.getDirectory() == null)
+            catalogs.setDirectory(new File(ctx.getCacheDir(), "watson-catalogs"));
+    }
+
+    /**
+     * Create a session with a copy of the default configuration
+     * @return a new session, independent of the others
+     */
+    public RecognitionSession newSession() {
+        SpeechConfiguration sc = this.sConfig;
+        return new RecognitionSession(this, sc != null ? new SpeechConfiguration(sc) : null);
+    }
+
+    /**
+     * Create a session with its own configuration
+     * @param sc
+     * @return a new session, independent of the others
+     */
+    public RecognitionSession newSession(SpeechConfiguration sc) {
+        return new RecognitionSession(this, sc);
+    }
+
+    /**
+     * Create an uploader for the given configuration and model, with the credentials of the client
+     * @param model STT model, null for the default one
+     * @param config
+     * @return uploader, not connected yet
+     * @throws URISyntaxException
+     */
+    WebSocketUploader createUploader(String model, SpeechConfiguration config) throws URISyntaxException {
+        HashMap<String, String> header = new HashMap<String, String>();
+        header.put("Content-Type", config.audioFormat);
+
+        if(config.isAuthNeeded) {
+            TokenProvider tokenProvider = this.tokenProvider;
+            if (tokenProvider != null) {
+                header.put("X-Watson-Authorization-Token", tokenProvider.getToken());
+                Log.d(TAG, "ws connecting with token based authentication");
+            } else {
+                String credentials;
+                synchronized(this) {
+                    credentials = this.username + ":" + this.password;
+                }
+                String auth = "Basic " + Base64.encodeBytes(credentials.getBytes(Charset.forName("UTF-8")));
+                header.put("Authorization", auth);
+                Log.d(TAG, "ws connecting with Basic Authentication");
+            }
+        }
+
+        String wsURL = getHostURL().toString() + "/v1/recognize" + (model != null ? ("?model=" + model) : "");
+
+        WebSocketUploader uploader = new WebSocketUploader(wsURL, header, config);
+        uploader.setLatencyStatistics(this.latencyStatistics);
+        return uploader;
+    }
+
+    /** Asks the token only when the CatalogCache sends a request */
+    private final CatalogCache.Authenticator authenticator = new CatalogCache.Authenticator() {
+        @Override
+        public void authenticate(HttpGet request) {
+            buildAuthenticationHeader(request);
+        }
+    };
+
+    /**
+     * Build authentication header
+     * @param httpGet
+     */
+    private void buildAuthenticationHeader(HttpGet httpGet) {
+        // use token based authentication if possible, otherwise Basic Authentication will be used
+        TokenProvider tokenProvider = this.tokenProvider;
+        if (tokenProvider != null) {
+            Log.d(TAG, "using token based authentication");
+            httpGet.setHeader("X-Watson-Authorization-Token", tokenProvider.getToken());
+        } else {
+            Log.d(TAG, "using basic authentication");
+            synchronized(this) {
+                httpGet.setHeader(BasicScheme.authenticate(new UsernamePasswordCredentials(this.username, this.password), "UTF-8",false));
+            }
+        }
+    }
+
+    /**
+     * @return the HTTP address of the service
+     */
+    private String httpURL() {
+        return this.hostURL.toString().replace("wss","https").replace("ws", "http");
+    }
+
+    /**
+     * Get a catalog of the service, from the CatalogCache if it is recent
+     * @param httpGet
+     * @return the catalog
+     * @throws IOException
+     * @throws JSONException
+     */
+    private JSONObject requestCatalog(HttpGet httpGet) throws IOException, JSONException {
+        httpGet.setHeader("accept","application/json");
+        String response = CatalogCache.sharedInstance().get(httpGet, this.authenticator);
+        Log.d(TAG, "response: " + response);
+        return new JSONObject(response);
+    }
+
+    /**
+     * Get a catalog of the service on the shared workers
+     * @param path
+     * @return the future catalog, cancelling it aborts the request
+     */
+    private SpeechFuture<JSONObject> requestCatalogAsync(String path) {
+        final HttpGet httpGet = new HttpGet(this.httpURL() + path);
+        return SpeechFuture.submit(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws IOException, JSONException {
+                return requestCatalog(httpGet);
+            }
+        }, httpGet);
+    }
+
+    /**
+     * Get the list of models for the speech to text service, from the CatalogCache if it is recent
+     * @return
+     */
+    public JSONObject getModels() {
+        JSONObject object = null;
+
+        try {
+            Log.d(TAG, "starting getModels");
+            object = this.requestCatalog(new HttpGet(this.httpURL()+"/v1/models"));
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    /**
+     * Get the list of models without blocking
+     * @return the future list, failures are reported to its callbacks
+     */
+    public SpeechFuture<JSONObject> getModelsAsync() {
+        return this.requestCatalogAsync("/v1/models");
+    }
+
+    /**
+     * Get information about the model
+     * @param strModel
+     * @return
+     */
+    public JSONObject getModelInfo(String strModel) {
+        JSONObject object = null;
+
+        try {
+            object = this.requestCatalog(new HttpGet(this.httpURL()+"/v1/models/"+strModel));
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    /**
+     * Get information about the model without blocking
+     * @param strModel
+     * @return the future information, failures are reported to its callbacks
+     */
+    public SpeechFuture<JSONObject> getModelInfoAsync(String strModel) {
+        return this.requestCatalogAsync("/v1/models/"+strModel);
+    }
+
+    /**
+     * Fetch the information of every model into the CatalogCache, so that getModelInfo answers from memory afterwards.
+     * At most PREFETCH_PARALLELISM requests run at once, over the connections of the shared pool.
+     * @return the future information by model name; models whose information could not be fetched are missing
+     */
+    public SpeechFuture<Map<String, JSONObject>> prefetchModelInfos() {
+        return SpeechFuture.submit(new Callable<Map<String, JSONObject>>() {
+            @Override
+            public Map<String, JSONObject> call() throws IOException, JSONException, InterruptedException {
+                JSONArray models = requestCatalog(new HttpGet(httpURL()+"/v1/models")).getJSONArray("models");
+                final Queue<String> names = new ConcurrentLinkedQueue<String>();
+                for(int i = 0; i < models.length(); i++)
+                    names.add(models.getJSONObject(i).getString("name"));
+                final Map<String, JSONObject> infos = new ConcurrentHashMap<String, JSONObject>();
+                final Set<HttpGet> inFlight = Collections.synchronizedSet(new HashSet<HttpGet>());
+                int fetchers = Math.min(PREFETCH_PARALLELISM, names.size());
+                final CountDownLatch done = new CountDownLatch(fetchers);
+                for(int i = 0; i < fetchers; i++) {
+                    SharedExecutors.getWorkers().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                String name;
+                                while((name = names.poll()) != null) {
+                                    HttpGet httpGet = new HttpGet(httpURL()+"/v1/models/"+name);
+                                    inFlight.add(httpGet);
+                                    try {
+                                        infos.put(name, requestCatalog(httpGet));
+                                    } catch (IOException | JSONException e) {
+                                        Log.w(TAG, "Cannot prefetch " + name + ": " + e.getMessage());
+                                    } finally {
+                                        inFlight.remove(httpGet);
+                                    }
+                                }
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    });
+                }
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    // cancelled: stop the fetchers and abort their requests
+                    names.clear();
+                    synchronized(inFlight) {
+                        for(HttpGet httpGet : inFlight)
+                            httpGet.abort();
+                    }
+                    throw e;
+                }
+                return infos;
+            }
+        });
+    }
+
+    /**
+     * Durations of the TLS handshakes, resumed sessions apart from full handshakes
+     * @return statistics shared by every secure connection
+     */
+    public HandshakeStatistics getHandshakeStatistics() {
+        return TLSContext.getHandshakeStatistics();
+    }
+
+    /**
+     * Histograms of the steps of the recognitions completed by the sessions of the client
+     * @return statistics shared by the sessions
+     */
+    public LatencyStatistics getLatencyStatistics() {
+        return this.latencyStatistics;
+    }
+
+    /**
+     * @return the hostURL
+     */
+    public URI getHostURL() {
+        return hostURL;
+    }
+    /**
+     * @param hostURL the hostURL to set
+     */
+    public void setHostURL(URI hostURL) {
+        this.hostURL = hostURL;
+    }
+    /**
+     * @return the application context
+     */
+    public Context getContext() {
+        return appCtx;
+    }
+    /**
+     * @return the default configuration of the sessions
+     */
+    public SpeechConfiguration getConfiguration() {
+        return sConfig;
+    }
+    /**
+     * Set API credentials
+     * @param username
+     */
+    public synchronized void setCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+    /**
+     * Set token provider (for token based authentication)
+     */
+    public void setTokenProvider(TokenProvider tokenProvider) { this.tokenProvider = tokenProvider; }
+}
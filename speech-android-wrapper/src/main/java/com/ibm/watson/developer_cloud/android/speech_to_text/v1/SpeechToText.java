@@ -17,56 +17,33 @@
 package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
 
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.charset.Charset;
-import java.util.HashMap;
-
-import org.java_websocket.util.Base64;
+import java.util.Map;
 
 import android.content.Context;
-import android.util.Log;
 
-import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.IAudioConsumer;
-import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.AudioCaptureThread;
 import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
-import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.WebSocketUploader;
-import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.IChunkUploader;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.UploadStatistics;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.LatencyStatistics;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.RecognitionTimeline;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.HandshakeStatistics;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SpeechFuture;
 import com.ibm.watson.developer_cloud.android.speech_common.v1.TokenProvider;
 
-// HTTP library
-import org.apache.http.HttpResponse;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-
 /**
  * Speech Recognition Class for SDK functions
  * @author Viney Ugave (vaugave@us.ibm.com)
+ *
+ * The shared instance drives a single recognition session, use a SpeechClient to run several sessions at once.
  */
 public class SpeechToText {
 
     protected static final String TAG = "SpeechToText";
-    //private String transcript;
-    private Context appCtx;
-    private SpeechConfiguration sConfig;
-    private AudioCaptureThread audioCaptureThread = null;
-    private IChunkUploader uploader = null;
-    private ISpeechDelegate delegate = null;
-    private String username;
-    private String password;
-    private String model;
-    private TokenProvider tokenProvider = null;
-    private URI hostURL;
+    /** Address, credentials and resources shared by the sessions */
+    private final SpeechClient client = new SpeechClient();
+    /** Session driven by this instance */
+    private final RecognitionSession session = client.newSession();
     /** UPLOADING TIIMEOUT  */
     //private int UPLOADING_TIMEOUT = 5000; // default duration of closing connection
 
@@ -74,18 +51,18 @@ public class SpeechToText {
      * Constructor
      */
     public SpeechToText() {
-        this.sConfig = null;
     }
 
     /**
      * Speech Recognition Shared Instance
      */
-    private static SpeechToText _instance = null;
+    private static volatile SpeechToText _instance = null;
 
     public static SpeechToText sharedInstance(){
         if(_instance == null){
             synchronized(SpeechToText.class){
-                _instance = new SpeechToText();
+                if(_instance == null)
+                    _instance = new SpeechToText();
             }
         }
         return _instance;
@@ -98,106 +75,61 @@ public class SpeechToText {
      * @param sc
      */
     public void initWithContext(URI uri, Context ctx, SpeechConfiguration sc){
-        this.setHostURL(uri);
-        this.appCtx = ctx;
-        this.sConfig = sc;
+        this.client.initWithContext(uri, ctx, sc);
+        this.session.setConfiguration(sc);
     }
 
     /**
-     * Audio consumer
+     * @return the client, to create more sessions sharing the address and credentials of this instance
      */
-    private class STTIAudioConsumer implements IAudioConsumer {
-        private IChunkUploader mUploader = null;
-
-        public STTIAudioConsumer(IChunkUploader uploader) {
-            mUploader = uploader;
-        }
-
-        public void consume(byte [] data) {
-            mUploader.onHasData(data);
-        }
-
-        @Override
-        public void onAmplitude(double amplitude, double volume) {
-            if(delegate != null){
-                delegate.onAmplitude(amplitude, volume);
-            }
-        }
+    public SpeechClient getClient() {
+        return client;
     }
 
     /**
-     * Start recording
+     * Start recording audio
      */
-    private void startRecording() {
-        uploader.prepare();
-        STTIAudioConsumer audioConsumer = new STTIAudioConsumer(uploader);
-
-        audioCaptureThread = new AudioCaptureThread(SpeechConfiguration.SAMPLE_RATE, audioConsumer);
-        audioCaptureThread.start();
+    public void recognize() {
+        this.session.recognize();
     }
 
     /**
-     * Start recording audio
+     * Open a connection ahead of time, so that the next recognize() streams without waiting for the
+     * DNS lookup, TCP and TLS handshakes and the WebSocket upgrade.
+     * The connection is replaced before it expires, and a new one is opened after each recognition
+     * until coolDown() is called.
+     * Credentials, model and configuration must be set before calling it.
      */
-    public void recognize() {
-        Log.d(TAG, "recognize");
-        try {
-            HashMap<String, String> header = new HashMap<String, String>();
-            header.put("Content-Type", sConfig.audioFormat);
-
-            if(sConfig.isAuthNeeded) {
-                if (this.tokenProvider != null) {
-                    header.put("X-Watson-Authorization-Token", this.tokenProvider.getToken());
-                    Log.d(TAG, "ws connecting with token based authentication");
-                } else {
-                    String auth = "Basic " + Base64.encodeBytes((this.username + ":" + this.password).getBytes(Charset.forName("UTF-8")));
-                    header.put("Authorization", auth);
-                    Log.d(TAG, "ws connecting with Basic Authentication");
-                }
-            }
-
-            String wsURL = getHostURL().toString() + "/v1/recognize" + (this.model != null ? ("?model=" + this.model) : "");
+    public void warmUp() {
+        this.session.warmUp();
+    }
 
-            uploader = new WebSocketUploader(wsURL, header, sConfig);
-            uploader.setDelegate(this.delegate);
-            this.startRecording();
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Stop keeping a warm connection and close the idle one
+     */
+    public void coolDown() {
+        this.session.coolDown();
     }
 
     /**
      * Stop audio recording
      */
     public void stopRecording(){
-        if(audioCaptureThread != null)
-            audioCaptureThread.end();
+        this.session.stopRecording();
     }
 
     /**
-     * Stop recognition
+     * Stop recognition, in a persistent session the connection stays open for the next utterance
      */
     public void stopRecognition() {
-        this.stopRecording();
-        if(uploader != null) {
-            uploader.stop();
-            uploader.close();
-        }
+        this.session.stopRecognition();
     }
 
     /**
-     * Build authentication header
-     * @param httpGet
+     * Close the connection of a persistent session without waiting for its idle timeout
      */
-    private void buildAuthenticationHeader(HttpGet httpGet) {
-        // use token based authentication if possible, otherwise Basic Authentication will be used
-        if (this.tokenProvider != null) {
-            Log.d(TAG, "using token based authentication");
-            httpGet.setHeader("X-Watson-Authorization-Token",this.tokenProvider.getToken());
-        } else {
-            Log.d(TAG, "using basic authentication");
-            httpGet.setHeader(BasicScheme.authenticate(new UsernamePasswordCredentials(this.username, this.password), "UTF-8",false));
-        }
+    public void closeSession() {
+        this.session.closeSession();
     }
 
     /**
@@ -205,31 +137,7 @@ public class SpeechToText {
      * @return
      */
     public JSONObject getModels() {
-        JSONObject object = null;
-
-        try {
-            Log.d(TAG, "starting getModels");
-            HttpClient httpClient = new DefaultHttpClient();
-            String strHTTPURL = this.hostURL.toString().replace("wss","https").replace("ws", "http");
-            HttpGet httpGet = new HttpGet(strHTTPURL+"/v1/models");
-            this.buildAuthenticationHeader(httpGet);
-            httpGet.setHeader("accept","application/json");
-            HttpResponse executed = httpClient.execute(httpGet);
-            InputStream is=executed.getEntity().getContent();
-
-            // get the JSON object containing the models from the InputStream
-            BufferedReader streamReader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
-            StringBuilder responseStrBuilder = new StringBuilder();
-            String inputStr;
-            while ((inputStr = streamReader.readLine()) != null)
-                responseStrBuilder.append(inputStr);
-            Log.d(TAG, "response: " + responseStrBuilder.toString());
-            object = new JSONObject(responseStrBuilder.toString());
-            Log.d(TAG, object.toString());
-        } catch (IOException | JSONException e) {
-            e.printStackTrace();
-        }
-        return object;
+        return this.client.getModels();
     }
 
     /**
@@ -238,73 +146,105 @@ public class SpeechToText {
      * @return
      */
     public JSONObject getModelInfo(String strModel) {
-        JSONObject object = null;
+        return this.client.getModelInfo(strModel);
+    }
 
-        try {
-            HttpClient httpClient = new DefaultHttpClient();
-            String strHTTPURL = this.hostURL.toString().replace("wss", "https").replace("ws", "http");
-            HttpGet httpGet = new HttpGet(strHTTPURL+"/v1/models/en-US_NarrowbandModel");
-            this.buildAuthenticationHeader(httpGet);
-            httpGet.setHeader("accept","application/json");
-            HttpResponse executed = httpClient.execute(httpGet);
-            InputStream is=executed.getEntity().getContent();
+    /**
+     * Get the list of models without blocking
+     * @return the future list, failures are reported to its callbacks
+     */
+    public SpeechFuture<JSONObject> getModelsAsync() {
+        return this.client.getModelsAsync();
+    }
+
+    /**
+     * Get information about the model without blocking
+     * @param strModel
+     * @return the future information, failures are reported to its callbacks
+     */
+    public SpeechFuture<JSONObject> getModelInfoAsync(String strModel) {
+        return this.client.getModelInfoAsync(strModel);
+    }
 
-            // get the JSON object containing the models from the InputStream
-            BufferedReader streamReader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
-            StringBuilder responseStrBuilder = new StringBuilder();
-            String inputStr;
-            while ((inputStr = streamReader.readLine()) != null)
-                responseStrBuilder.append(inputStr);
-            object = new JSONObject(responseStrBuilder.toString());
-            Log.d(TAG, object.toString());
+    /**
+     * Fetch the information of every model in parallel, getModelInfo answers from memory afterwards
+     * @return the future information by model name
+     */
+    public SpeechFuture<Map<String, JSONObject>> prefetchModelInfos() {
+        return this.client.prefetchModelInfos();
+    }
 
-        } catch (IOException | JSONException e) {
-            e.printStackTrace();
-        }
-        return object;
+    /**
+     * Outbound traffic counters of the current (or last) recognition
+     * @return statistics, null if recognize() has not been called yet
+     */
+    public UploadStatistics getUploadStatistics() {
+        return this.session.getUploadStatistics();
+    }
+
+    /**
+     * Durations of the TLS handshakes, resumed sessions apart from full handshakes
+     * @return statistics shared by every secure connection
+     */
+    public HandshakeStatistics getHandshakeStatistics() {
+        return this.client.getHandshakeStatistics();
+    }
+
+    /**
+     * Steps of the current (or last) recognition, from the request to the last result
+     * @return timeline, null if recognize() has not been called yet
+     */
+    public RecognitionTimeline getTimeline() {
+        return this.session.getTimeline();
+    }
+
+    /**
+     * Histograms of the steps of the completed recognitions
+     * @return statistics
+     */
+    public LatencyStatistics getLatencyStatistics() {
+        return this.client.getLatencyStatistics();
     }
 
     /**
      * @return the hostURL
      */
     public URI getHostURL() {
-        return hostURL;
+        return this.client.getHostURL();
     }
     /**
      * @param hostURL the hostURL to set
      */
     public void setHostURL(URI hostURL) {
-        this.hostURL = hostURL;
+        this.client.setHostURL(hostURL);
     }
     /**
      * @return the delegate
      */
     public ISpeechDelegate getDelegate() {
-        return delegate;
+        return this.session.getDelegate();
     }
     /**
      * @param val the delegate to set
      */
     public void setDelegate(ISpeechDelegate val) {
-        this.delegate = val;
+        this.session.setDelegate(val);
     }
     /**
      * Set API credentials
      * @param username
      */
     public void setCredentials(String username, String password) {
-        this.username = username;
-        this.password = password;
+        this.client.setCredentials(username, password);
     }
     /**
      * Set token provider (for token based authentication)
      */
-    public void setTokenProvider(TokenProvider tokenProvider) { this.tokenProvider = tokenProvider; }
+    public void setTokenProvider(TokenProvider tokenProvider) { this.client.setTokenProvider(tokenProvider); }
     /**
      * Set STT model
      */
     public void setModel(String model) {
-        this.model = model;
+        this.session.setModel(model);
     }
 }
-
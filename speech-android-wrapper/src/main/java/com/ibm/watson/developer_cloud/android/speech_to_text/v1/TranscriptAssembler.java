@@ -0,0 +1,150 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionAlternative;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Transcript of a dictation: the finalized segments followed by the current interim hypothesis.
+ * Each result costs the length of the hypothesis it changes, not the length of the transcript,
+ * and listeners receive the minimal change instead of the whole text.
+ * Feed it from IResultDelegate.onResults; listeners are called on the calling thread.
+ */
+public class TranscriptAssembler {
+
+    /** Finalized segments followed by the interim hypothesis */
+    private final StringBuilder text = new StringBuilder();
+    /** Length of the finalized part of the text */
+    private int finalizedLength = 0;
+    /** Finalized segments, in order */
+    private final List<String> segments = new ArrayList<String>();
+    /** Segments finalized before the current utterance, whose result indexes start again at 0 */
+    private int utteranceBase = 0;
+    /** Current interim hypothesis, empty if there is none */
+    private String interim = "";
+    private final List<ITranscriptListener> listeners = new CopyOnWriteArrayList<ITranscriptListener>();
+
+    public void addListener(ITranscriptListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(ITranscriptListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Apply the results of a message, the best alternative of each
+     * @param results
+     */
+    public synchronized void onResults(RecognitionResult[] results) {
+        for(RecognitionResult result : results) {
+            RecognitionAlternative best = result.getBest();
+            int finalized = this.segments.size() - this.utteranceBase;
+            if(result.getIndex() < finalized) {
+                // the results of a new utterance start again at 0
+                this.newUtterance();
+            }
+            this.setTail(best != null ? best.getTranscript() : "");
+            if(result.isFinal()) {
+                this.segments.add(this.interim);
+                this.finalizedLength = this.text.length();
+                this.interim = "";
+                for(ITranscriptListener listener : this.listeners)
+                    listener.onFinalized(this.finalizedLength);
+            }
+        }
+    }
+
+    /**
+     * The next results belong to a new utterance, the interim hypothesis of the previous one is dropped
+     */
+    public synchronized void newUtterance() {
+        this.setTail("");
+        this.utteranceBase = this.segments.size();
+    }
+
+    /**
+     * Replace the interim hypothesis, only the part after the common prefix changes
+     */
+    private void setTail(String hypothesis) {
+        int common = 0;
+        int max = Math.min(this.interim.length(), hypothesis.length());
+        while(common < max && this.interim.charAt(common) == hypothesis.charAt(common))
+            common++;
+        if(common == this.interim.length() && common == hypothesis.length())
+            return;
+        int offset = this.finalizedLength + common;
+        String change = hypothesis.substring(common);
+        boolean append = common == this.interim.length();
+        this.text.setLength(offset);
+        this.text.append(change);
+        this.interim = hypothesis;
+        for(ITranscriptListener listener : this.listeners) {
+            if(append)
+                listener.onAppend(change);
+            else
+                listener.onReplaceTail(offset, change);
+        }
+    }
+
+    /**
+     * Forget everything, listeners are told to clear their text
+     */
+    public synchronized void clear() {
+        this.text.setLength(0);
+        this.finalizedLength = 0;
+        this.segments.clear();
+        this.utteranceBase = 0;
+        this.interim = "";
+        for(ITranscriptListener listener : this.listeners)
+            listener.onReplaceTail(0, "");
+    }
+
+    /**
+     * @return the whole transcript, built on demand
+     */
+    public synchronized String getText() {
+        return this.text.toString();
+    }
+
+    public synchronized int length() {
+        return this.text.length();
+    }
+
+    /**
+     * @return length of the part of the transcript which will not change anymore
+     */
+    public synchronized int getFinalizedLength() {
+        return this.finalizedLength;
+    }
+
+    /**
+     * @return the finalized segments, in order
+     */
+    public synchronized List<String> getSegments() {
+        return new ArrayList<String>(this.segments);
+    }
+
+    public synchronized String getInterim() {
+        return this.interim;
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionAlternative;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Words of the final results with their times and confidences, for sessions requested with
+ * timestamps (and optionally wordConfidence). The words are kept in columns: the id of the word
+ * in a dictionary, and its start, end and confidence in float arrays, ordered by start time.
+ * A word at a given audio time, or the words of a time range, are found by binary search.
+ */
+public class WordTimeline {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Distinct words, by id */
+    private final List<String> dictionary = new ArrayList<String>();
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private int[] wordIds = new int[INITIAL_CAPACITY];
+    private float[] starts = new float[INITIAL_CAPACITY];
+    private float[] ends = new float[INITIAL_CAPACITY];
+    /** NaN for the words without confidence */
+    private float[] confidences = new float[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Add the words of the final results, interim results are ignored since their words are revised
+     * @param results
+     */
+    public void add(RecognitionResult[] results) {
+        this.add(results, 0);
+    }
+
+    /**
+     * Add the words of the final results
+     * @param results
+     * @param offset added (s) to the times of the words, e.g. the start of the utterance in the media
+     */
+    public synchronized void add(RecognitionResult[] results, double offset) {
+        for(RecognitionResult result : results) {
+            RecognitionAlternative best = result.getBest();
+            if(!result.isFinal() || best == null || best.getStartTimes() == null)
+                continue;
+            String[] words = best.getWords();
+            double[] wordStarts = best.getStartTimes();
+            double[] wordEnds = best.getEndTimes();
+            double[] wordConfidences = best.getWordConfidences();
+            for(int i = 0; i < words.length; i++) {
+                float confidence = wordConfidences != null && i < wordConfidences.length ? (float) wordConfidences[i] : Float.NaN;
+                this.add(words[i], (float) (wordStarts[i] + offset), (float) (wordEnds[i] + offset), confidence);
+            }
+        }
+    }
+
+    /**
+     * Add a word, in order of start time; a word starting before the last one is inserted at its place
+     */
+    public synchronized void add(String word, float start, float end, float confidence) {
+        if(this.size == this.wordIds.length)
+            this.grow();
+        int at = this.size;
+        if(at > 0 && start < this.starts[at - 1]) {
+            at = this.firstStartingAfter(start);
+            int moved = this.size - at;
+            System.arraycopy(this.wordIds, at, this.wordIds, at + 1, moved);
+            System.arraycopy(this.starts, at, this.starts, at + 1, moved);
+            System.arraycopy(this.ends, at, this.ends, at + 1, moved);
+            System.arraycopy(this.confidences, at, this.confidences, at + 1, moved);
+        }
+        this.wordIds[at] = this.intern(word);
+        this.starts[at] = start;
+        this.ends[at] = end;
+        this.confidences[at] = confidence;
+        this.size++;
+    }
+
+    private int intern(String word) {
+        Integer id = this.ids.get(word);
+        if(id == null) {
+            id = this.dictionary.size();
+            this.dictionary.add(word);
+            this.ids.put(word, id);
+        }
+        return id;
+    }
+
+    private void grow() {
+        int capacity = this.wordIds.length * 2;
+        int[] wordIds = new int[capacity];
+        float[] starts = new float[capacity];
+        float[] ends = new float[capacity];
+        float[] confidences = new float[capacity];
+        System.arraycopy(this.wordIds, 0, wordIds, 0, this.size);
+        System.arraycopy(this.starts, 0, starts, 0, this.size);
+        System.arraycopy(this.ends, 0, ends, 0, this.size);
+        System.arraycopy(this.confidences, 0, confidences, 0, this.size);
+        this.wordIds = wordIds;
+        this.starts = starts;
+        this.ends = ends;
+        this.confidences = confidences;
+    }
+
+    /**
+     * @return index of the first word starting after time, size() if there is none
+     */
+    private int firstStartingAfter(float time) {
+        int low = 0;
+        int high = this.size;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(this.starts[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first word starting at or after time, size() if there is none
+     */
+    private int firstStartingFrom(float time) {
+        int low = 0;
+        int high = this.size;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(this.starts[mid] < time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first word ending after time, size() if there is none
+     */
+    private int firstEndingAfter(float time) {
+        int low = 0;
+        int high = this.size;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(this.ends[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @param time audio time (s)
+     * @return index of the word spoken at time, -1 if time falls between words
+     */
+    public synchronized int indexAt(float time) {
+        int index = this.firstStartingAfter(time) - 1;
+        return index >= 0 && time < this.ends[index] ? index : -1;
+    }
+
+    /**
+     * @param time audio time (s)
+     * @return index of the last word started at time, to keep a highlight during pauses, -1 before the first word
+     */
+    public synchronized int indexBefore(float time) {
+        return this.firstStartingAfter(time) - 1;
+    }
+
+    /**
+     * Range of the words overlapping [from, to), to be read with the getters
+     * @return {first index, end index (exclusive)}, empty if no word overlaps
+     */
+    public synchronized int[] range(float from, float to) {
+        // words are ordered by start, and their ends follow the same order since they do not overlap
+        int first = this.firstEndingAfter(from);
+        int end = Math.max(first, this.firstStartingFrom(to));
+        return new int[] {first, end};
+    }
+
+    /**
+     * @return the words overlapping [from, to)
+     */
+    public synchronized String[] getWords(float from, float to) {
+        int[] range = this.range(from, to);
+        String[] words = new String[range[1] - range[0]];
+        for(int i = 0; i < words.length; i++)
+            words[i] = this.dictionary.get(this.wordIds[range[0] + i]);
+        return words;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public synchronized String getWord(int index) {
+        return this.dictionary.get(this.getWordId(index));
+    }
+
+    /**
+     * @return id of the word in the dictionary, equal ids are equal words
+     */
+    public synchronized int getWordId(int index) {
+        this.check(index);
+        return this.wordIds[index];
+    }
+
+    public synchronized float getStart(int index) {
+        this.check(index);
+        return this.starts[index];
+    }
+
+    public synchronized float getEnd(int index) {
+        this.check(index);
+        return this.ends[index];
+    }
+
+    /**
+     * @return confidence of the word, NaN if word confidences were not requested
+     */
+    public synchronized float getConfidence(int index) {
+        this.check(index);
+        return this.confidences[index];
+    }
+
+    /**
+     * @return number of distinct words
+     */
+    public synchronized int getDictionarySize() {
+        return this.dictionary.size();
+    }
+
+    private void check(int index) {
+        if(index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + this.size);
+    }
+
+    public synchronized void clear() {
+        this.size = 0;
+        this.dictionary.clear();
+        this.ids.clear();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers reused across connections, by power of two sizes.
+ * Outgoing frames and TLS records are short lived, pooling them keeps the garbage collector out of the audio path.
+ */
+public class BufferPool {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+    /** Smallest pooled size is 2^MIN_SHIFT */
+    private static final int MIN_SHIFT = 8;
+    /** Largest pooled size is 2^MAX_SHIFT, larger buffers are not kept */
+    private static final int MAX_SHIFT = 20;
+    /** Buffers kept per size */
+    private static final int MAX_PER_SIZE = 32;
+
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> free;
+    private final AtomicInteger[] counts;
+
+    public BufferPool() {
+        int sizes = MAX_SHIFT - MIN_SHIFT + 1;
+        this.free = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(sizes);
+        this.counts = new AtomicInteger[sizes];
+        for(int i = 0; i < sizes; i++) {
+            this.free.add(new ConcurrentLinkedQueue<ByteBuffer>());
+            this.counts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @param size
+     * @return a cleared heap buffer of at least the given capacity
+     */
+    public ByteBuffer acquire(int size) {
+        int shift = shiftOf(size);
+        if(shift > MAX_SHIFT)
+            return ByteBuffer.allocate(size);
+        int index = shift - MIN_SHIFT;
+        ByteBuffer buffer = this.free.get(index).poll();
+        if(buffer == null)
+            return ByteBuffer.allocate(1 << shift);
+        this.counts[index].decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back, it must not be used afterwards
+     * @param buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if(buffer == null)
+            return;
+        int capacity = buffer.capacity();
+        int shift = shiftOf(capacity);
+        if(shift > MAX_SHIFT || (1 << shift) != capacity || !buffer.hasArray())
+            return;
+        int index = shift - MIN_SHIFT;
+        if(this.counts[index].incrementAndGet() > MAX_PER_SIZE) {
+            this.counts[index].decrementAndGet();
+            return;
+        }
+        this.free.get(index).offer(buffer);
+    }
+
+    private static int shiftOf(int size) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_SHIFT);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges small outgoing chunks into larger WebSocket messages.
+ * Pending data is sent as soon as it reaches the byte threshold, or when the oldest pending byte
+ * has waited for the maximum delay, whichever comes first.
+ */
+public class FrameCoalescer {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    /**
+     * Destination of the coalesced messages
+     */
+    public interface ISink {
+        void send(byte[] data);
+        /**
+         * Hand a message over without waiting
+         * @return false if the message was not taken
+         */
+        boolean offer(byte[] data);
+    }
+
+    private final ISink sink;
+    private final int threshold;
+    private final long delay;
+    private final ScheduledExecutorService scheduler;
+
+    /** Pending bytes */
+    private byte[] buffer;
+    /** Number of pending bytes */
+    private int length = 0;
+    /** Flush timer of the pending data */
+    private ScheduledFuture<?> flushTask = null;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushNow();
+        }
+    };
+
+    /**
+     * @param sink where the merged messages go
+     * @param threshold size in bytes that triggers an immediate send
+     * @param delay maximum time in milliseconds data may wait before being sent
+     * @param scheduler timer for the delayed flush
+     */
+    public FrameCoalescer(ISink sink, int threshold, long delay, ScheduledExecutorService scheduler) {
+        this.sink = sink;
+        this.threshold = Math.max(1, threshold);
+        this.delay = delay;
+        this.scheduler = scheduler;
+        this.buffer = new byte[this.threshold];
+    }
+
+    /**
+     * Append data to the pending message
+     * @param data
+     */
+    public synchronized void write(byte[] data) {
+        if(data.length >= this.threshold) {
+            // nothing to gain by copying a chunk that fills a message on its own
+            flush();
+            this.sink.send(data);
+            return;
+        }
+        if(this.length + data.length > this.buffer.length)
+            flush();
+        System.arraycopy(data, 0, this.buffer, this.length, data.length);
+        this.length += data.length;
+
+        if(this.length >= this.threshold)
+            flush();
+        else if(this.flushTask == null)
+            this.flushTask = this.scheduler.schedule(this.flushRunnable, this.delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send out the pending data now
+     */
+    public synchronized void flush() {
+        if(this.flushTask != null) {
+            this.flushTask.cancel(false);
+            this.flushTask = null;
+        }
+        if(this.length == 0)
+            return;
+        byte[] message = new byte[this.length];
+        System.arraycopy(this.buffer, 0, message, 0, this.length);
+        this.length = 0;
+        this.sink.send(message);
+    }
+
+    /**
+     * Delayed flush, runs on the timer which must not wait for the sink: data the sink
+     * does not take now stays pending and is tried again after the delay
+     */
+    private synchronized void flushNow() {
+        this.flushTask = null;
+        if(this.length == 0)
+            return;
+        byte[] message = new byte[this.length];
+        System.arraycopy(this.buffer, 0, message, 0, this.length);
+        if(this.sink.offer(message))
+            this.length = 0;
+        else
+            this.flushTask = this.scheduler.schedule(this.flushRunnable, this.delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drop pending data and cancel the timer
+     */
+    public synchronized void discard() {
+        if(this.flushTask != null) {
+            this.flushTask.cancel(false);
+            this.flushTask = null;
+        }
+        this.length = 0;
+    }
+}
@@ -36,6 +36,12 @@ public interface IChunkUploader {
      * @return true, if uploader is prepared
      */
     boolean isUploadPrepared();
+    /**
+     * Checks if the connection has been closed or has failed.
+     *
+     * @return true, if the connection cannot be used anymore
+     */
+    boolean isConnectionLost();
     /**
      * Upload data
      * @param data
@@ -60,4 +66,17 @@ public interface IChunkUploader {
      * Close connection.
      */
     void close();
+    /**
+     * Get the outbound traffic counters
+     *
+     * @return statistics
+     */
+    UploadStatistics getStatistics();
+
+    /**
+     * Get the steps of the current (or last) recognition
+     *
+     * @return timeline, null before the first recognition
+     */
+    RecognitionTimeline getTimeline();
 }
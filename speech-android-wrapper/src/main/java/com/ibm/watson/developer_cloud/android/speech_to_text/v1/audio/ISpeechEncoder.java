@@ -43,8 +43,18 @@ public interface ISpeechEncoder {
      * @return the time for compression audio.
      */
     void onStart();
+    /**
+     * Lower the bitrate of the encoded audio, the change applies to the next encoded frame.
+     *
+     * @return false if the encoder cannot go any lower
+     */
+    boolean reduceBitrate();
     /**
      * Close output stream.
      */
     void close();
+    /**
+     * Free the encoder without ending its stream, e.g. when its connection was lost.
+     */
+    void release();
 }
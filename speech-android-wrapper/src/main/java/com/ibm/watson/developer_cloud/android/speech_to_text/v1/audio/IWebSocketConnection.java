@@ -0,0 +1,75 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.nio.channels.NotYetConnectedException;
+import java.security.GeneralSecurityException;
+
+/**
+ * One WebSocket connection to the STT service, whatever the transport.
+ * A connection is used once, the uploader creates a new one every time it (re)connects.
+ */
+public interface IWebSocketConnection {
+
+    /**
+     * Receives the events of a connection
+     */
+    interface IListener {
+        /** TCP is connected and, on a secure connection, the TLS handshake is verified: the upgrade request goes out */
+        void onTransportReady(IWebSocketConnection connection);
+        void onOpen(IWebSocketConnection connection);
+        void onMessage(IWebSocketConnection connection, String message);
+        void onClose(IWebSocketConnection connection, int code, String reason, boolean remote);
+        void onError(IWebSocketConnection connection, Exception ex);
+    }
+
+    /**
+     * Use TLS with the shared, validating context, to be called before connecting
+     *
+     * @throws GeneralSecurityException
+     */
+    void secure() throws GeneralSecurityException;
+
+    /**
+     * Connect and wait for the end of the WebSocket upgrade
+     *
+     * @return true if the connection is open
+     * @throws InterruptedException
+     */
+    boolean connectBlocking() throws InterruptedException;
+
+    /**
+     * @return true if the connection is open
+     */
+    boolean isConnected();
+
+    /**
+     * @return true once the connection is closing or closed
+     */
+    boolean isLost();
+
+    /**
+     * @return bytes accepted by the connection and not yet written to the network
+     */
+    long getBufferedBytes();
+
+    void send(String message) throws NotYetConnectedException;
+
+    void send(byte[] data) throws NotYetConnectedException;
+
+    void close();
+}
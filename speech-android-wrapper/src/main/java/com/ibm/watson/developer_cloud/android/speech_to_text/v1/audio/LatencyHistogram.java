@@ -0,0 +1,111 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations (ms) counted in fixed 1-2-5 buckets, so that recording never allocates or locks.
+ */
+public class LatencyHistogram {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    /** Upper bounds (ms, inclusive) of the buckets, the last bucket has no bound */
+    private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param duration (ms), negative values are ignored
+     */
+    public void record(long duration) {
+        if(duration < 0)
+            return;
+        int bucket = 0;
+        while(bucket < BOUNDS.length && duration > BOUNDS[bucket])
+            bucket++;
+        this.counts.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.sum.addAndGet(duration);
+        long max;
+        // concurrent recordings: retry until the maximum is at least this duration
+        while(duration > (max = this.max.get()) && !this.max.compareAndSet(max, duration));
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return average duration (ms)
+     */
+    public double getMean() {
+        long count = this.count.get();
+        return count > 0 ? this.sum.get() / (double) count : 0;
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound (ms) of the bucket holding the percentile, the maximum for the last bucket
+     */
+    public long getPercentile(double percentile) {
+        long count = this.count.get();
+        if(count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for(int i = 0; i < BOUNDS.length; i++) {
+            seen += this.counts.get(i);
+            if(seen >= rank)
+                return Math.min(BOUNDS[i], this.max.get());
+        }
+        return this.max.get();
+    }
+
+    /**
+     * @return upper bounds (ms) of the buckets, the last bucket (above the last bound) has none
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * @return number of durations in each bucket
+     */
+    public long[] getCounts() {
+        long[] counts = new long[this.counts.length()];
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = this.counts.get(i);
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "n: " + getCount() + ", mean: " + String.format("%.1f", getMean()) + "ms"
+                + ", p50: " + getPercentile(50) + "ms, p90: " + getPercentile(90) + "ms"
+                + ", p99: " + getPercentile(99) + "ms, max: " + getMax() + "ms";
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+/**
+ * Histograms of the steps of the completed recognitions.
+ */
+public class LatencyStatistics {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    /** Connect start to TCP connected and TLS verified, new connections only */
+    private final LatencyHistogram connect = new LatencyHistogram();
+    /** TCP/TLS ready to the end of the WebSocket upgrade, new connections only */
+    private final LatencyHistogram upgrade = new LatencyHistogram();
+    /** Request to start message sent */
+    private final LatencyHistogram start = new LatencyHistogram();
+    /** Start message to first audio message sent */
+    private final LatencyHistogram firstAudio = new LatencyHistogram();
+    /** First audio captured to first interim result */
+    private final LatencyHistogram firstInterim = new LatencyHistogram();
+    /** End of the audio covered by a final result to its reception */
+    private final LatencyHistogram finalResult = new LatencyHistogram();
+
+    /**
+     * Add the steps of a recognition, a recognition is counted once
+     * @param timeline
+     */
+    public void add(RecognitionTimeline timeline) {
+        if(!timeline.complete())
+            return;
+        if(!timeline.isConnectionReused()) {
+            record(this.connect, timeline.getConnectStart(), timeline.getTransportReady());
+            record(this.upgrade, timeline.getTransportReady(), timeline.getOpen());
+        }
+        record(this.start, timeline.getRequested(), timeline.getStartSent());
+        record(this.firstAudio, timeline.getStartSent(), timeline.getFirstAudioSent());
+        RecognitionTimeline.Result interim = timeline.getFirstInterim();
+        if(interim != null)
+            record(this.firstInterim, timeline.getFirstAudio(), interim.time);
+        for(RecognitionTimeline.Result result : timeline.getFinalResults())
+            this.finalResult.record(timeline.getLatency(result));
+    }
+
+    private static void record(LatencyHistogram histogram, long from, long to) {
+        if(from != 0 && to != 0)
+            histogram.record(to - from);
+    }
+
+    public LatencyHistogram getConnect() {
+        return this.connect;
+    }
+
+    public LatencyHistogram getUpgrade() {
+        return this.upgrade;
+    }
+
+    public LatencyHistogram getStart() {
+        return this.start;
+    }
+
+    public LatencyHistogram getFirstAudio() {
+        return this.firstAudio;
+    }
+
+    public LatencyHistogram getFirstInterim() {
+        return this.firstInterim;
+    }
+
+    public LatencyHistogram getFinalResult() {
+        return this.finalResult;
+    }
+
+    @Override
+    public String toString() {
+        return "connect: [" + this.connect + "], upgrade: [" + this.upgrade + "], start: [" + this.start
+                + "], first audio: [" + this.firstAudio + "], first interim: [" + this.firstInterim
+                + "], final result: [" + this.finalResult + "]";
+    }
+}
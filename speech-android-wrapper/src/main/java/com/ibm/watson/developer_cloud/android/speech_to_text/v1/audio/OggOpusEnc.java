@@ -37,6 +37,14 @@ public class OggOpusEnc extends OpusWriter implements ISpeechEncoder {
     private OpusWriter writer = null;
     /** Opus encoder reference */
     private PointerByReference opusEncoder;
+    /** Bitrate set when the encoder is created (bits/s), close to the libopus default for 16 kHz voice */
+    public static final int INITIAL_BITRATE = 24000;
+    /** Lowest bitrate the encoder may be asked for (bits/s) */
+    public static final int MIN_BITRATE = 8000;
+    /** Current target bitrate (bits/s) */
+    private volatile int bitrate = INITIAL_BITRATE;
+    /** Set when the target bitrate has to be passed to the encoder */
+    private volatile boolean bitrateChanged = false;
     /**
      * Constructor
      */
@@ -55,6 +63,8 @@ public class OggOpusEnc extends OpusWriter implements ISpeechEncoder {
                 SpeechConfiguration.AUDIO_CHANNELS,
                 JNAOpus.OPUS_APPLICATION_VOIP,
                 error);
+        // an explicit bitrate, so that the reductions start from a known value
+        JNAOpus.INSTANCE.opus_encoder_ctl(this.opusEncoder, JNAOpus.OPUS_SET_BITRATE_REQUEST, this.bitrate);
     }
     /**
      * When the encode begins
@@ -63,6 +73,18 @@ public class OggOpusEnc extends OpusWriter implements ISpeechEncoder {
     public void onStart() {
         writer.writeHeader("encoder=Lavc56.20.100 libopus");
     }
+    /**
+     * Lower the target bitrate by a third, down to MIN_BITRATE.
+     * The encoder is not thread safe, the new value is applied by the encoding thread.
+     */
+    @Override
+    public synchronized boolean reduceBitrate() {
+        if(this.bitrate <= MIN_BITRATE)
+            return false;
+        this.bitrate = Math.max(MIN_BITRATE, this.bitrate * 2 / 3);
+        this.bitrateChanged = true;
+        return true;
+    }
     /**
      * Encode raw audio data into Opus format then call OpusWriter to write the Ogg packet
      *
@@ -72,6 +94,10 @@ public class OggOpusEnc extends OpusWriter implements ISpeechEncoder {
      */
     public int encodeAndWrite(byte[] rawAudio) throws IOException {
         int uploadedAudioSize = 0;
+        if(this.bitrateChanged) {
+            this.bitrateChanged = false;
+            JNAOpus.INSTANCE.opus_encoder_ctl(this.opusEncoder, JNAOpus.OPUS_SET_BITRATE_REQUEST, this.bitrate);
+        }
         ByteArrayInputStream ios = new ByteArrayInputStream(rawAudio);
 
         byte[] data = new byte[SpeechConfiguration.FRAME_SIZE*2];
@@ -109,14 +135,25 @@ public class OggOpusEnc extends OpusWriter implements ISpeechEncoder {
         return uploadedAudioSize;
     }
     /**
-     * Close writer
+     * Close writer: send the last page, flagged as the end of the stream, then free the encoder
      */
     public void close() {
         try {
-            writer.close();
-            JNAOpus.INSTANCE.opus_encoder_destroy(this.opusEncoder);
+            if(writer != null)
+                writer.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        this.release();
+    }
+    /**
+     * Free the native encoder, once
+     */
+    @Override
+    public synchronized void release() {
+        if(this.opusEncoder != null) {
+            JNAOpus.INSTANCE.opus_encoder_destroy(this.opusEncoder);
+            this.opusEncoder = null;
+        }
     }
 }
@@ -43,6 +43,13 @@ public class RawEnc implements ISpeechEncoder {
      */
     @Override
     public void onStart() {}
+    /**
+     * Raw audio has a fixed bitrate
+     */
+    @Override
+    public boolean reduceBitrate() {
+        return false;
+    }
     /* (non-Javadoc)
      * @see com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.SpeechEncoder#encodeAndWrite(byte[])
      */
@@ -51,6 +58,11 @@ public class RawEnc implements ISpeechEncoder {
         writer.writePacket(b, 0, b.length);
         return b.length;
     }
+    /**
+     * Raw audio holds no native state
+     */
+    @Override
+    public void release() {}
     /* (non-Javadoc)
      * @see com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.SpeechEncoder#close()
      */
@@ -0,0 +1,273 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionAlternative;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Times (ms, System.currentTimeMillis()) of the steps of one recognition, from the request to the last result.
+ * A step which has not happened yet is 0. On a warm or persistent connection the connection steps
+ * come before the request.
+ */
+public class RecognitionTimeline {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    /**
+     * A result received from the server
+     */
+    public static class Result {
+        /** Reception time */
+        public final long time;
+        public final int index;
+        /** End (s) of the audio the result covers, from the word timestamps, -1 without timestamps */
+        public final double audioEnd;
+
+        Result(long time, int index, double audioEnd) {
+            this.time = time;
+            this.index = index;
+            this.audioEnd = audioEnd;
+        }
+    }
+
+    private final long requested;
+    private long connectStart = 0;
+    private long transportReady = 0;
+    private long open = 0;
+    private long startSent = 0;
+    /** Checked without locking on every audio chunk */
+    private volatile long firstAudio = 0;
+    private volatile long firstAudioSent = 0;
+    private Result firstInterim = null;
+    private final List<Result> finalResults = new ArrayList<Result>();
+    private long end = 0;
+    private long close = 0;
+    private int reconnects = 0;
+    private boolean completed = false;
+
+    /**
+     * @param requested time the recognition was requested
+     */
+    public RecognitionTimeline(long requested) {
+        this.requested = requested;
+    }
+
+    /**
+     * The connection used by the recognition started to connect, the first connection is kept
+     */
+    public synchronized void onConnectStart(long time) {
+        if(this.connectStart == 0)
+            this.connectStart = time;
+    }
+
+    /**
+     * TCP is connected and the TLS handshake is done
+     */
+    public synchronized void onTransportReady(long time) {
+        if(this.transportReady == 0)
+            this.transportReady = time;
+    }
+
+    /**
+     * The WebSocket upgrade is done
+     */
+    public synchronized void onOpen(long time) {
+        if(this.open == 0)
+            this.open = time;
+    }
+
+    public synchronized void onStartSent(long time) {
+        if(this.startSent == 0)
+            this.startSent = time;
+    }
+
+    /**
+     * The first audio was handed to the uploader, it is the origin of the audio offsets
+     */
+    public void onFirstAudio(long time) {
+        if(this.firstAudio != 0)
+            return;
+        synchronized(this) {
+            if(this.firstAudio == 0)
+                this.firstAudio = time;
+        }
+    }
+
+    /**
+     * The first audio message went out
+     */
+    public void onAudioSent(long time) {
+        if(this.firstAudioSent != 0)
+            return;
+        synchronized(this) {
+            if(this.firstAudioSent == 0 && this.startSent != 0)
+                this.firstAudioSent = time;
+        }
+    }
+
+    public synchronized void onReconnect() {
+        this.reconnects++;
+    }
+
+    /**
+     * Record the first interim result and every final result of a message
+     * @param time reception time
+     * @param results results of the message, parsed once by the connection, null if it carries none
+     */
+    public synchronized void onMessage(long time, RecognitionResult[] results) {
+        if(results == null)
+            return;
+        for(RecognitionResult result : results) {
+            if(!result.isFinal() && this.firstInterim != null)
+                continue;
+            Result r = new Result(time, result.getIndex(), audioEnd(result));
+            if(result.isFinal())
+                this.finalResults.add(r);
+            else
+                this.firstInterim = r;
+        }
+    }
+
+    /**
+     * @return end (s) of the last word of the best alternative, -1 without timestamps
+     */
+    private static double audioEnd(RecognitionResult result) {
+        RecognitionAlternative best = result.getBest();
+        double[] ends = best != null ? best.getEndTimes() : null;
+        return ends != null && ends.length > 0 ? ends[ends.length - 1] : -1;
+    }
+
+    /**
+     * The server returned every result of the recognition
+     */
+    public synchronized void onEnd(long time) {
+        if(this.end == 0)
+            this.end = time;
+    }
+
+    public synchronized void onClose(long time) {
+        if(this.close == 0)
+            this.close = time;
+    }
+
+    /**
+     * @return true the first time only, so that the recognition is counted once in the aggregates
+     */
+    synchronized boolean complete() {
+        if(this.completed)
+            return false;
+        this.completed = true;
+        return true;
+    }
+
+    public long getRequested() {
+        return this.requested;
+    }
+
+    public synchronized long getConnectStart() {
+        return this.connectStart;
+    }
+
+    public synchronized long getTransportReady() {
+        return this.transportReady;
+    }
+
+    public synchronized long getOpen() {
+        return this.open;
+    }
+
+    public synchronized long getStartSent() {
+        return this.startSent;
+    }
+
+    public synchronized long getFirstAudio() {
+        return this.firstAudio;
+    }
+
+    public synchronized long getFirstAudioSent() {
+        return this.firstAudioSent;
+    }
+
+    public synchronized Result getFirstInterim() {
+        return this.firstInterim;
+    }
+
+    public synchronized List<Result> getFinalResults() {
+        return new ArrayList<Result>(this.finalResults);
+    }
+
+    public synchronized long getEnd() {
+        return this.end;
+    }
+
+    public synchronized long getClose() {
+        return this.close;
+    }
+
+    public synchronized int getReconnects() {
+        return this.reconnects;
+    }
+
+    /**
+     * @return true if the connection was opened before the recognition was requested
+     */
+    public synchronized boolean isConnectionReused() {
+        return this.open != 0 && this.open <= this.requested;
+    }
+
+    /**
+     * Time between a result and the end of the audio it covers, as captured in real time
+     * @param result
+     * @return latency (ms), -1 if the result has no timestamps
+     */
+    public synchronized long getLatency(Result result) {
+        if(result.audioEnd < 0 || this.firstAudio == 0)
+            return -1;
+        return Math.max(0, result.time - this.firstAudio - (long) (result.audioEnd * 1000));
+    }
+
+    private static String step(String name, long time, long origin) {
+        return time != 0 ? ", " + name + ": +" + (time - origin) + "ms" : "";
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("requested");
+        sb.append(step("connect", this.connectStart, this.requested));
+        sb.append(step("transport ready", this.transportReady, this.requested));
+        sb.append(step("open", this.open, this.requested));
+        sb.append(step("start sent", this.startSent, this.requested));
+        sb.append(step("first audio", this.firstAudio, this.requested));
+        sb.append(step("first audio sent", this.firstAudioSent, this.requested));
+        if(this.firstInterim != null)
+            sb.append(step("first interim", this.firstInterim.time, this.requested));
+        for(Result r : this.finalResults) {
+            sb.append(step("final " + r.index, r.time, this.requested));
+            if(r.audioEnd >= 0)
+                sb.append(" (audio to ").append(r.audioEnd).append("s)");
+        }
+        sb.append(step("end", this.end, this.requested));
+        sb.append(step("close", this.close, this.requested));
+        if(this.reconnects > 0)
+            sb.append(", reconnects: ").append(this.reconnects);
+        return sb.toString();
+    }
+}
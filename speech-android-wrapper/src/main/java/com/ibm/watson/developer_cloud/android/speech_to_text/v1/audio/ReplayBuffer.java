@@ -0,0 +1,97 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Raw audio of the current utterance that the server has not finalized yet.
+ * The audio is kept before encoding, so that it can be encoded again into a new stream after a reconnection.
+ * Offsets are counted in bytes from the beginning of the utterance.
+ */
+public class ReplayBuffer {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    private final int maxBytes;
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+    /** Offset of the first retained byte */
+    private long startOffset = 0;
+    /** Retained bytes */
+    private int length = 0;
+
+    /**
+     * @param maxBytes oldest audio is dropped beyond this size
+     */
+    public ReplayBuffer(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void append(byte[] chunk) {
+        this.chunks.addLast(chunk);
+        this.length += chunk.length;
+        while(this.length > this.maxBytes && this.chunks.size() > 1)
+            this.dropFirst();
+    }
+
+    /**
+     * Drop the chunks that end before the given offset
+     * @param offset in bytes from the beginning of the utterance
+     */
+    public synchronized void trimTo(long offset) {
+        while(!this.chunks.isEmpty() && this.startOffset + this.chunks.getFirst().length <= offset)
+            this.dropFirst();
+    }
+
+    private void dropFirst() {
+        byte[] first = this.chunks.removeFirst();
+        this.length -= first.length;
+        this.startOffset += first.length;
+    }
+
+    /**
+     * @return offset of the first retained byte
+     */
+    public synchronized long getStartOffset() {
+        return this.startOffset;
+    }
+
+    /**
+     * @return offset of the end of the retained audio
+     */
+    public synchronized long getEndOffset() {
+        return this.startOffset + this.length;
+    }
+
+    /**
+     * @return the retained chunks, oldest first
+     */
+    public synchronized List<byte[]> getChunks() {
+        return new ArrayList<byte[]>(this.chunks);
+    }
+
+    /**
+     * Start a new utterance
+     */
+    public synchronized void reset() {
+        this.chunks.clear();
+        this.length = 0;
+        this.startOffset = 0;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+/**
+ * Keeps the results of an utterance consistent across reconnections.
+ * After a reconnection the server numbers results and times words from the beginning of the replayed audio:
+ * result indexes and timestamps are shifted back to the utterance, and results covering audio that was
+ * already finalized are dropped.
+ */
+public class ResultAligner {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+    private static final String TAG = ResultAligner.class.getName();
+    /** Tolerance (s) when comparing the end of a result with the finalized audio */
+    private static final double EPSILON = 0.01;
+
+    /** Added to the result indexes of the current connection */
+    private int resultIndexBase = 0;
+    /** Added (s) to the timestamps of the current connection */
+    private double timeOffset = 0;
+    /** Set after a reconnection, until then messages go through untouched */
+    private boolean shifted = false;
+    /** End (s) of the audio covered by the final results delivered so far */
+    private double finalizedUntil = 0;
+    /** Index the next result of the utterance will get */
+    private int nextResultIndex = 0;
+
+    /**
+     * The connection was replaced, the new one receives audio from the given offset
+     * @param replayStart offset (s) of the first replayed sample in the utterance
+     */
+    public synchronized void onReconnect(double replayStart) {
+        this.resultIndexBase = this.nextResultIndex;
+        this.timeOffset = replayStart;
+        this.shifted = true;
+    }
+
+    /**
+     * Start a new utterance
+     */
+    public synchronized void reset() {
+        this.resultIndexBase = 0;
+        this.timeOffset = 0;
+        this.shifted = false;
+        this.finalizedUntil = 0;
+        this.nextResultIndex = 0;
+    }
+
+    /**
+     * @return end (s) of the audio covered by the final results delivered so far
+     */
+    public synchronized double getFinalizedUntil() {
+        return this.finalizedUntil;
+    }
+
+    /**
+     * Align a message of the server
+     * @param message
+     * @return the message to deliver, null if everything it carries was already delivered
+     */
+    public synchronized String align(String message) {
+        if(message.indexOf("\"results\"") < 0)
+            return message;
+        // messages without a final result only need work after a reconnection
+        if(!this.shifted && message.indexOf("\"final\"") < 0)
+            return message;
+        try {
+            JSONObject obj = new JSONObject(message);
+            JSONArray results = obj.optJSONArray("results");
+            if(results == null)
+                return message;
+            int index = obj.optInt("result_index", this.nextResultIndex - this.resultIndexBase);
+            JSONArray kept = new JSONArray();
+            int firstKept = -1;
+            for(int i = 0; i < results.length(); i++) {
+                JSONObject result = results.getJSONObject(i);
+                boolean isFinal = result.optBoolean("final", false);
+                double end = this.shiftTimestamps(result);
+                if(this.shifted && end > 0 && end <= this.finalizedUntil + EPSILON) {
+                    // replayed audio that had already been finalized
+                    if(isFinal)
+                        this.resultIndexBase--;
+                    continue;
+                }
+                int resultIndex = this.resultIndexBase + index + i;
+                if(firstKept < 0)
+                    firstKept = resultIndex;
+                if(isFinal) {
+                    this.finalizedUntil = Math.max(this.finalizedUntil, end);
+                    this.nextResultIndex = resultIndex + 1;
+                }
+                kept.put(result);
+            }
+            if(!this.shifted)
+                return message;
+            if(kept.length() == 0)
+                return null;
+            obj.put("results", kept);
+            obj.put("result_index", firstKept);
+            return obj.toString();
+        } catch (JSONException e) {
+            Log.e(TAG, "Unable to align the results: " + e.getMessage());
+            return message;
+        }
+    }
+
+    /**
+     * Shift the word timestamps of every alternative by the time offset
+     * @param result
+     * @return end (s) of the last word of the first alternative, 0 if there are no timestamps
+     * @throws JSONException
+     */
+    private double shiftTimestamps(JSONObject result) throws JSONException {
+        JSONArray alternatives = result.optJSONArray("alternatives");
+        if(alternatives == null)
+            return 0;
+        double end = 0;
+        for(int a = 0; a < alternatives.length(); a++) {
+            JSONArray timestamps = alternatives.getJSONObject(a).optJSONArray("timestamps");
+            if(timestamps == null)
+                continue;
+            for(int w = 0; w < timestamps.length(); w++) {
+                JSONArray word = timestamps.getJSONArray(w);
+                if(this.shifted) {
+                    word.put(1, word.getDouble(1) + this.timeOffset);
+                    word.put(2, word.getDouble(2) + this.timeOffset);
+                }
+                if(a == 0)
+                    end = Math.max(end, word.getDouble(2));
+            }
+        }
+        return end;
+    }
+}
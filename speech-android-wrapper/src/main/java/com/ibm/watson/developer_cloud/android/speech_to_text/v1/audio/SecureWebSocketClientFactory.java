@@ -0,0 +1,160 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLSession;
+
+import org.java_websocket.SSLSocketChannel2;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketAdapter;
+import org.java_websocket.client.DefaultSSLWebSocketClientFactory;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.TLSContext;
+
+/**
+ * Secure channels built on the shared TLS context, so that WebSocket connections resume cached sessions.
+ * The host name is checked against the certificate before the upgrade request (and its credentials) goes out.
+ */
+public class SecureWebSocketClientFactory extends DefaultSSLWebSocketClientFactory {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    private static volatile SecureWebSocketClientFactory instance = null;
+
+    private SecureWebSocketClientFactory() throws GeneralSecurityException {
+        super(TLSContext.getSSLContext(), SharedExecutors.getWorkers());
+    }
+
+    /**
+     * The factory is stateless, every connection shares the same one
+     * @return the shared factory
+     * @throws GeneralSecurityException
+     */
+    public static SecureWebSocketClientFactory getInstance() throws GeneralSecurityException {
+        if(instance == null) {
+            synchronized(SecureWebSocketClientFactory.class) {
+                if(instance == null)
+                    instance = new SecureWebSocketClientFactory();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Told when the TLS handshake of a channel is complete and verified
+     */
+    public interface IHandshakeListener {
+        void onHandshakeFinished();
+    }
+
+    /**
+     * Factory for a single connection, which is told when its handshake is verified
+     * @param listener
+     * @return a factory building the same channels as the shared one
+     */
+    public WebSocketClient.WebSocketClientFactory withListener(final IHandshakeListener listener) {
+        return new WebSocketClient.WebSocketClientFactory() {
+            @Override
+            public ByteChannel wrapChannel(SelectionKey key, String host, int port) throws IOException {
+                return SecureWebSocketClientFactory.this.wrapChannel(key, host, port, listener);
+            }
+            @Override
+            public WebSocket createWebSocket(WebSocketAdapter adapter, Draft draft, Socket socket) {
+                return SecureWebSocketClientFactory.this.createWebSocket(adapter, draft, socket);
+            }
+            @Override
+            public WebSocket createWebSocket(WebSocketAdapter adapter, List<Draft> drafts, Socket socket) {
+                return SecureWebSocketClientFactory.this.createWebSocket(adapter, drafts, socket);
+            }
+        };
+    }
+
+    @Override
+    public ByteChannel wrapChannel(SelectionKey key, String host, int port) throws IOException {
+        return this.wrapChannel(key, host, port, null);
+    }
+
+    private ByteChannel wrapChannel(SelectionKey key, String host, int port, IHandshakeListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        // the host and port identify the cached session to resume
+        SSLEngine engine = this.sslcontext.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        return new VerifiedChannel(key, engine, this.exec, host, start, listener);
+    }
+
+    /**
+     * Checks the host name and times the handshake once it is complete
+     */
+    private static class VerifiedChannel extends SSLSocketChannel2 {
+        private final String host;
+        private final long start;
+        private final IHandshakeListener listener;
+        private boolean verified = false;
+
+        VerifiedChannel(SelectionKey key, SSLEngine engine, ExecutorService exec, String host, long start, IHandshakeListener listener) throws IOException {
+            super(key, engine, exec);
+            this.host = host;
+            this.start = start;
+            this.listener = listener;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            this.verify();
+            return super.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int read = super.read(dst);
+            this.verify();
+            return read;
+        }
+
+        @Override
+        public void writeMore() throws IOException {
+            this.verify();
+            super.writeMore();
+        }
+
+        private void verify() throws IOException {
+            if(this.verified || this.sslEngine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING)
+                return;
+            SSLSession session = this.sslEngine.getSession();
+            if(!session.isValid())
+                return;
+            this.verified = true;
+            TLSContext.onHandshakeFinished(this.host, session, this.start);
+            if(this.listener != null)
+                this.listener.onHandshakeFinished();
+        }
+    }
+}
@@ -0,0 +1,849 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import org.java_websocket.util.Base64;
+
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SerialExecutor;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.TLSContext;
+
+/**
+ * WebSocket connection served by the shared SelectorLoop, so that a connection costs no thread of its own.
+ * The upgrade, the framing and the TLS records (SSLEngine) are handled on the loop thread,
+ * the events are delivered in order on the shared workers so that a slow listener never stalls the loop.
+ */
+public class SelectorConnection implements IWebSocketConnection, SelectorLoop.IHandler {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+    private static final String TAG = SelectorConnection.class.getName();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    /** Time (ms) allowed for the TCP connection, the TLS handshake and the upgrade */
+    private static final long CONNECT_TIMEOUT = 30000;
+    /** Time (ms) the server has to answer a close frame */
+    private static final long CLOSE_TIMEOUT = 2000;
+    /** Largest message accepted from the server */
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int CLOSE_NO_STATUS = 1005;
+    private static final int CLOSE_ABNORMAL = 1006;
+
+    private static final int STATE_CONNECTING = 0;
+    private static final int STATE_HANDSHAKING = 1;
+    private static final int STATE_UPGRADING = 2;
+    private static final int STATE_OPEN = 3;
+    private static final int STATE_CLOSING = 4;
+    private static final int STATE_CLOSED = 5;
+
+    private static final Random random = new Random();
+
+    private final URI uri;
+    private final Map<String, String> header;
+    private final IListener listener;
+    private final SelectorLoop loop;
+    private final BufferPool pool;
+    /** Delivers the events in order */
+    private final SerialExecutor events = new SerialExecutor(SharedExecutors.getWorkers());
+    private final CountDownLatch connected = new CountDownLatch(1);
+
+    private boolean secure = false;
+    private volatile int state = STATE_CONNECTING;
+    private String host;
+    private int port;
+    private String key;
+
+    /** Frames waiting for the network, in plain text */
+    private final ConcurrentLinkedQueue<ByteBuffer> outQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // the fields below are only used on the loop thread
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private SSLEngine engine;
+    /** Encrypted records received and not decrypted yet, in write mode */
+    private ByteBuffer netIn;
+    /** Encrypted records not written yet, in read mode */
+    private ByteBuffer netOut;
+    /** Plain data received and not parsed yet, in write mode */
+    private ByteBuffer inbound;
+    /** Size inbound must reach to hold the frame being received */
+    private int inboundNeeded = 0;
+    /** Size of the buffer records are decrypted into */
+    private int applicationSize;
+    private long handshakeStart;
+    private boolean taskRunning = false;
+    private boolean closeSent = false;
+    /** Payload of a fragmented message */
+    private ByteArrayOutputStream fragments = null;
+    private int fragmentsOpcode;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushRequested.set(false);
+            pump();
+        }
+    };
+
+    public SelectorConnection(URI serverURI, Map<String, String> header, IListener listener) throws IOException {
+        this.uri = serverURI;
+        this.header = header;
+        this.listener = listener;
+        this.loop = SelectorLoop.getInstance();
+        this.pool = this.loop.getBufferPool();
+    }
+
+    @Override
+    public void secure() throws GeneralSecurityException {
+        // fail early if the context cannot be created
+        TLSContext.getSSLContext();
+        this.secure = true;
+    }
+
+    @Override
+    public boolean connectBlocking() throws InterruptedException {
+        this.host = this.uri.getHost();
+        this.port = this.uri.getPort();
+        if(this.port == -1)
+            this.port = this.secure ? 443 : 80;
+        try {
+            // the name is resolved on the calling thread, the loop never blocks
+            InetSocketAddress address = new InetSocketAddress(this.host, this.port);
+            if(address.isUnresolved())
+                throw new IOException("Unable to resolve " + this.host);
+            final SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            final boolean done = channel.connect(address);
+            this.loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onRegister(channel, done);
+                }
+            });
+        } catch (IOException e) {
+            this.fail(e);
+        }
+        SharedExecutors.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(state < STATE_OPEN)
+                            fail(new SocketTimeoutException("Connection timed out"));
+                    }
+                });
+            }
+        }, CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        this.connected.await();
+        return this.state == STATE_OPEN;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.state == STATE_OPEN;
+    }
+
+    @Override
+    public boolean isLost() {
+        return this.state >= STATE_CLOSING;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        return this.bufferedBytes.get();
+    }
+
+    @Override
+    public void send(String message) throws NotYetConnectedException {
+        byte[] payload = message.getBytes(UTF8);
+        this.sendFrame(OP_TEXT, payload);
+    }
+
+    @Override
+    public void send(byte[] data) throws NotYetConnectedException {
+        this.sendFrame(OP_BINARY, data);
+    }
+
+    private void sendFrame(int opcode, byte[] payload) {
+        int state = this.state;
+        if(state < STATE_OPEN)
+            throw new NotYetConnectedException();
+        if(state > STATE_OPEN) {
+            Log.w(TAG, "dropping a frame sent on a closed connection");
+            return;
+        }
+        this.enqueue(this.frame(opcode, payload));
+        this.requestFlush();
+    }
+
+    @Override
+    public void close() {
+        this.loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(state < STATE_OPEN) {
+                    terminate(CLOSE_NORMAL, "", false);
+                    return;
+                }
+                if(state != STATE_OPEN)
+                    return;
+                state = STATE_CLOSING;
+                sendClose(CLOSE_NORMAL);
+                pump();
+                SharedExecutors.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        loop.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                terminate(CLOSE_NORMAL, "", false);
+                            }
+                        });
+                    }
+                }, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Build a masked frame in a pooled buffer
+     */
+    private ByteBuffer frame(int opcode, byte[] payload) {
+        int length = payload.length;
+        int headerLength = 2 + (length > 0xFFFF ? 8 : length > 125 ? 2 : 0) + 4;
+        ByteBuffer frame = this.pool.acquire(headerLength + length);
+        frame.put((byte) (0x80 | opcode));
+        if(length <= 125) {
+            frame.put((byte) (0x80 | length));
+        }
+        else if(length <= 0xFFFF) {
+            frame.put((byte) (0x80 | 126));
+            frame.putShort((short) length);
+        }
+        else {
+            frame.put((byte) (0x80 | 127));
+            frame.putLong(length);
+        }
+        int mask = random.nextInt();
+        frame.putInt(mask);
+        byte[] array = frame.array();
+        int offset = frame.arrayOffset() + frame.position();
+        for(int i = 0; i < length; i++)
+            array[offset + i] = (byte) (payload[i] ^ (mask >>> (8 * (3 - (i & 3)))));
+        frame.position(frame.position() + length);
+        frame.flip();
+        return frame;
+    }
+
+    private void enqueue(ByteBuffer buffer) {
+        this.bufferedBytes.addAndGet(buffer.remaining());
+        this.outQueue.add(buffer);
+    }
+
+    private void requestFlush() {
+        // a single wake up for a burst of frames
+        if(this.flushRequested.compareAndSet(false, true))
+            this.loop.execute(this.flushTask);
+    }
+
+    private void sendClose(int code) {
+        this.closeSent = true;
+        this.enqueue(this.frame(OP_CLOSE, new byte[]{(byte) (code >> 8), (byte) code}));
+    }
+
+    // ---- loop thread ----
+
+    private void onRegister(SocketChannel channel, boolean done) {
+        this.channel = channel;
+        if(this.state == STATE_CLOSED) {
+            this.closeChannel();
+            return;
+        }
+        try {
+            this.selectionKey = this.loop.register(channel, done ? 0 : SelectionKey.OP_CONNECT, this);
+            if(done)
+                this.onConnected();
+        } catch (IOException e) {
+            this.fail(e);
+        }
+    }
+
+    @Override
+    public void onReady(SelectionKey key) throws IOException {
+        if(key.isConnectable()) {
+            if(!this.channel.finishConnect())
+                return;
+            this.onConnected();
+            return;
+        }
+        if(key.isReadable())
+            this.read();
+        if(this.state != STATE_CLOSED)
+            this.pump();
+    }
+
+    @Override
+    public void onFailure(IOException e) {
+        this.fail(e);
+    }
+
+    private void onConnected() throws IOException {
+        this.key = Base64.encodeBytes(randomBytes(16));
+        this.enqueue(this.upgradeRequest());
+        if(this.secure) {
+            try {
+                this.engine = TLSContext.getSSLContext().createSSLEngine(this.host, this.port);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e.getMessage());
+            }
+            this.engine.setUseClientMode(true);
+            int packetSize = this.engine.getSession().getPacketBufferSize();
+            this.applicationSize = this.engine.getSession().getApplicationBufferSize();
+            this.netIn = this.pool.acquire(packetSize);
+            this.netOut = this.pool.acquire(packetSize);
+            this.netOut.flip();
+            this.handshakeStart = System.currentTimeMillis();
+            this.state = STATE_HANDSHAKING;
+            this.engine.beginHandshake();
+        }
+        else {
+            this.state = STATE_UPGRADING;
+            this.onTransportReady();
+        }
+        this.inbound = this.pool.acquire(4096);
+        this.selectionKey.interestOps(SelectionKey.OP_READ);
+        this.pump();
+    }
+
+    private void onTransportReady() {
+        this.events.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onTransportReady(SelectorConnection.this);
+            }
+        });
+    }
+
+    private ByteBuffer upgradeRequest() {
+        String path = this.uri.getRawPath();
+        if(path == null || path.length() == 0)
+            path = "/";
+        if(this.uri.getRawQuery() != null)
+            path += "?" + this.uri.getRawQuery();
+        boolean defaultPort = this.port == (this.secure ? 443 : 80);
+        StringBuilder request = new StringBuilder();
+        request.append("GET ").append(path).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(this.host).append(defaultPort ? "" : ":" + this.port).append("\r\n");
+        request.append("Upgrade: websocket\r\n");
+        request.append("Connection: Upgrade\r\n");
+        request.append("Sec-WebSocket-Key: ").append(this.key).append("\r\n");
+        request.append("Sec-WebSocket-Version: 13\r\n");
+        if(this.header != null) {
+            for(Map.Entry<String, String> entry : this.header.entrySet())
+                request.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+        }
+        request.append("\r\n");
+        byte[] bytes = request.toString().getBytes(UTF8);
+        ByteBuffer buffer = this.pool.acquire(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Move everything that can move: TLS handshake, received data, queued frames
+     */
+    private void pump() {
+        if(this.state == STATE_CLOSED || this.state == STATE_CONNECTING)
+            return;
+        try {
+            if(this.secure)
+                this.processTls();
+            this.processInbound();
+            if(this.state == STATE_CLOSED)
+                return;
+            boolean blocked = this.secure ? !this.flushTls() : !this.flushPlain();
+            if(this.selectionKey.isValid())
+                this.selectionKey.interestOps(SelectionKey.OP_READ | (blocked ? SelectionKey.OP_WRITE : 0));
+        } catch (IOException e) {
+            this.fail(e);
+        }
+    }
+
+    private void read() throws IOException {
+        int read;
+        if(this.secure) {
+            if(!this.netIn.hasRemaining())
+                this.netIn = this.grow(this.netIn, this.netIn.capacity() * 2);
+            read = this.channel.read(this.netIn);
+        }
+        else {
+            ByteBuffer buffer = this.loop.getReadBuffer();
+            read = this.channel.read(buffer);
+            buffer.flip();
+            this.appendInbound(buffer);
+        }
+        if(read < 0) {
+            Log.d(TAG, "connection closed by the server");
+            this.processInbound();
+            this.terminate(CLOSE_ABNORMAL, "", true);
+        }
+    }
+
+    /**
+     * Run the TLS engine until it needs more data from the network
+     */
+    private void processTls() throws IOException {
+        while(!this.taskRunning && this.state != STATE_CLOSED) {
+            HandshakeStatus status = this.engine.getHandshakeStatus();
+            if(status == HandshakeStatus.NEED_TASK) {
+                this.runDelegatedTasks();
+                return;
+            }
+            if(status == HandshakeStatus.NEED_WRAP) {
+                if(!this.writeNet())
+                    return;
+                this.netOut.clear();
+                SSLEngineResult result = this.engine.wrap(EMPTY, this.netOut);
+                this.netOut.flip();
+                if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+                    throw new SSLException("TLS session closed");
+                if(!this.writeNet())
+                    return;
+                continue;
+            }
+            if(status == HandshakeStatus.NOT_HANDSHAKING && this.state == STATE_HANDSHAKING) {
+                // no application data goes out before the host name is checked
+                TLSContext.onHandshakeFinished(this.host, this.engine.getSession(), this.handshakeStart);
+                this.state = STATE_UPGRADING;
+                this.onTransportReady();
+            }
+            if(!this.unwrap())
+                return;
+        }
+    }
+
+    /**
+     * Decrypt one record
+     * @return false if more network data is needed
+     */
+    private boolean unwrap() throws IOException {
+        ByteBuffer application = this.loop.getApplicationBuffer(this.applicationSize);
+        this.netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = this.engine.unwrap(this.netIn, application);
+        } finally {
+            this.netIn.compact();
+        }
+        application.flip();
+        if(application.hasRemaining())
+            this.appendInbound(application);
+        switch(result.getStatus()) {
+        case BUFFER_UNDERFLOW:
+            int packetSize = this.engine.getSession().getPacketBufferSize();
+            if(this.netIn.capacity() < packetSize)
+                this.netIn = this.grow(this.netIn, packetSize);
+            return false;
+        case BUFFER_OVERFLOW:
+            this.applicationSize = Math.max(this.applicationSize * 2, this.engine.getSession().getApplicationBufferSize());
+            return true;
+        case CLOSED:
+            // the close frame may come with the end of the TLS session
+            this.processInbound();
+            this.terminate(CLOSE_ABNORMAL, "TLS session closed", true);
+            return false;
+        default:
+            return result.bytesConsumed() > 0 || result.bytesProduced() > 0
+                    || this.engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+        }
+    }
+
+    /**
+     * Certificate checks and key computations run on the workers, the loop resumes afterwards
+     */
+    private void runDelegatedTasks() {
+        this.taskRunning = true;
+        final SSLEngine engine = this.engine;
+        SharedExecutors.getWorkers().execute(new Runnable() {
+            @Override
+            public void run() {
+                Runnable task;
+                while((task = engine.getDelegatedTask()) != null)
+                    task.run();
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        taskRunning = false;
+                        pump();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return true if every encrypted byte has been written
+     */
+    private boolean writeNet() throws IOException {
+        if(this.netOut.hasRemaining())
+            this.channel.write(this.netOut);
+        return !this.netOut.hasRemaining();
+    }
+
+    /**
+     * @return false if the socket cannot take more data
+     */
+    private boolean flushTls() throws IOException {
+        while(true) {
+            if(!this.writeNet())
+                return false;
+            if(this.state < STATE_UPGRADING || this.engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING)
+                return true;
+            ByteBuffer next = this.outQueue.peek();
+            if(next == null)
+                return true;
+            this.netOut.clear();
+            SSLEngineResult result = this.engine.wrap(next, this.netOut);
+            this.netOut.flip();
+            if(result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                this.netOut = this.grow(this.netOut, this.engine.getSession().getPacketBufferSize());
+                this.netOut.flip();
+            }
+            else if(result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("TLS session closed");
+            }
+            this.bufferedBytes.addAndGet(-result.bytesConsumed());
+            if(!next.hasRemaining()) {
+                this.outQueue.poll();
+                this.pool.release(next);
+            }
+        }
+    }
+
+    /**
+     * @return false if the socket cannot take more data
+     */
+    private boolean flushPlain() throws IOException {
+        ByteBuffer next;
+        while((next = this.outQueue.peek()) != null) {
+            int written = this.channel.write(next);
+            this.bufferedBytes.addAndGet(-written);
+            if(next.hasRemaining())
+                return false;
+            this.outQueue.poll();
+            this.pool.release(next);
+        }
+        return true;
+    }
+
+    private void appendInbound(ByteBuffer data) {
+        if(this.inbound.remaining() < data.remaining())
+            this.inbound = this.grow(this.inbound, this.inbound.position() + data.remaining());
+        this.inbound.put(data);
+    }
+
+    /**
+     * Copy a buffer in write mode into a larger pooled one
+     */
+    private ByteBuffer grow(ByteBuffer buffer, int size) {
+        ByteBuffer larger = this.pool.acquire(size);
+        buffer.flip();
+        larger.put(buffer);
+        this.pool.release(buffer);
+        return larger;
+    }
+
+    /**
+     * Parse the upgrade response, then the frames
+     */
+    private void processInbound() throws IOException {
+        if(this.inbound == null || this.state < STATE_UPGRADING)
+            return;
+        this.inbound.flip();
+        try {
+            if(this.state == STATE_UPGRADING && !this.parseUpgradeResponse())
+                return;
+            while(this.state == STATE_OPEN || this.state == STATE_CLOSING) {
+                if(!this.parseFrame())
+                    break;
+            }
+        } finally {
+            if(this.inbound != null) {
+                this.inbound.compact();
+                if(this.inboundNeeded > this.inbound.capacity())
+                    this.inbound = this.grow(this.inbound, this.inboundNeeded);
+            }
+        }
+    }
+
+    /**
+     * @return false if the response is not complete yet
+     */
+    private boolean parseUpgradeResponse() throws IOException {
+        int start = this.inbound.position();
+        int end = -1;
+        for(int i = start; i + 3 < this.inbound.limit(); i++) {
+            if(this.inbound.get(i) == '\r' && this.inbound.get(i + 1) == '\n' && this.inbound.get(i + 2) == '\r' && this.inbound.get(i + 3) == '\n') {
+                end = i + 4;
+                break;
+            }
+        }
+        if(end < 0) {
+            if(this.inbound.limit() == this.inbound.capacity())
+                this.inboundNeeded = this.inbound.capacity() * 2;
+            return false;
+        }
+        byte[] bytes = new byte[end - start];
+        this.inbound.get(bytes);
+        String[] lines = new String(bytes, UTF8).split("\r\n");
+        if(lines.length == 0 || !lines[0].matches("HTTP/1\\.1 101.*"))
+            throw new IOException("Upgrade refused: " + (lines.length > 0 ? lines[0] : ""));
+        String accept = null;
+        for(int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if(colon > 0 && lines[i].substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept"))
+                accept = lines[i].substring(colon + 1).trim();
+        }
+        if(!this.expectedAccept().equals(accept))
+            throw new IOException("Invalid Sec-WebSocket-Accept");
+        this.inboundNeeded = 0;
+        this.state = STATE_OPEN;
+        this.events.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onOpen(SelectorConnection.this);
+            }
+        });
+        this.connected.countDown();
+        return true;
+    }
+
+    private String expectedAccept() throws IOException {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.encodeBytes(sha1.digest((this.key + WEBSOCKET_GUID).getBytes(UTF8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return false if the frame is not complete yet
+     */
+    private boolean parseFrame() throws IOException {
+        int start = this.inbound.position();
+        int available = this.inbound.remaining();
+        if(available < 2)
+            return false;
+        int b0 = this.inbound.get(start) & 0xFF;
+        int b1 = this.inbound.get(start + 1) & 0xFF;
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        boolean masked = (b1 & 0x80) != 0;
+        long length = b1 & 0x7F;
+        int headerLength = 2;
+        if(length == 126) {
+            if(available < 4)
+                return false;
+            length = this.inbound.getShort(start + 2) & 0xFFFF;
+            headerLength = 4;
+        }
+        else if(length == 127) {
+            if(available < 10)
+                return false;
+            length = this.inbound.getLong(start + 2);
+            headerLength = 10;
+        }
+        if(length < 0 || length > MAX_MESSAGE_SIZE)
+            throw new IOException("Frame too large: " + length);
+        if(masked)
+            headerLength += 4;
+        if(available < headerLength + length) {
+            this.inboundNeeded = headerLength + (int) length;
+            return false;
+        }
+        this.inboundNeeded = 0;
+        byte[] payload = new byte[(int) length];
+        this.inbound.position(start + headerLength);
+        this.inbound.get(payload);
+        if(masked) {
+            for(int i = 0; i < payload.length; i++)
+                payload[i] ^= this.inbound.get(start + headerLength - 4 + (i & 3));
+        }
+        this.onFrame(fin, opcode, payload);
+        return true;
+    }
+
+    private void onFrame(boolean fin, int opcode, byte[] payload) throws IOException {
+        switch(opcode) {
+        case OP_CONTINUATION:
+            if(this.fragments == null)
+                throw new IOException("Unexpected continuation frame");
+            this.fragments.write(payload);
+            if(fin) {
+                this.onMessage(this.fragmentsOpcode, this.fragments.toByteArray());
+                this.fragments = null;
+            }
+            break;
+        case OP_TEXT:
+        case OP_BINARY:
+            if(fin) {
+                this.onMessage(opcode, payload);
+            }
+            else {
+                this.fragments = new ByteArrayOutputStream();
+                this.fragments.write(payload);
+                this.fragmentsOpcode = opcode;
+            }
+            break;
+        case OP_CLOSE:
+            int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : CLOSE_NO_STATUS;
+            String reason = payload.length > 2 ? new String(payload, 2, payload.length - 2, UTF8) : "";
+            boolean remote = !this.closeSent;
+            if(remote) {
+                this.sendClose(code == CLOSE_NO_STATUS ? CLOSE_NORMAL : code);
+                if(this.secure)
+                    this.flushTls();
+                else
+                    this.flushPlain();
+            }
+            this.terminate(code, reason, remote);
+            break;
+        case OP_PING:
+            this.enqueue(this.frame(OP_PONG, payload));
+            break;
+        case OP_PONG:
+            break;
+        default:
+            throw new IOException("Unknown opcode " + opcode);
+        }
+    }
+
+    private void onMessage(int opcode, byte[] payload) {
+        if(opcode != OP_TEXT) {
+            Log.w(TAG, "ignoring a binary message of " + payload.length + " bytes");
+            return;
+        }
+        final String message = new String(payload, UTF8);
+        this.events.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onMessage(SelectorConnection.this, message);
+            }
+        });
+    }
+
+    private void fail(final IOException e) {
+        if(this.state == STATE_CLOSED)
+            return;
+        Log.e(TAG, "connection failed: " + e.getMessage());
+        this.events.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(SelectorConnection.this, e);
+            }
+        });
+        this.terminate(CLOSE_ABNORMAL, e.getMessage() != null ? e.getMessage() : "", false);
+    }
+
+    /**
+     * Close the socket, give the buffers back and notify the listener, once
+     */
+    private void terminate(final int code, final String reason, final boolean remote) {
+        if(this.state == STATE_CLOSED)
+            return;
+        this.state = STATE_CLOSED;
+        this.closeChannel();
+        this.pool.release(this.netIn);
+        this.pool.release(this.netOut);
+        this.pool.release(this.inbound);
+        this.netIn = null;
+        this.netOut = null;
+        this.inbound = null;
+        ByteBuffer buffer;
+        while((buffer = this.outQueue.poll()) != null)
+            this.pool.release(buffer);
+        this.bufferedBytes.set(0);
+        this.connected.countDown();
+        this.events.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onClose(SelectorConnection.this, code, reason, remote);
+            }
+        });
+    }
+
+    private void closeChannel() {
+        if(this.selectionKey != null)
+            this.selectionKey.cancel();
+        if(this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                Log.e(TAG, "unable to close the channel: " + e.getMessage());
+            }
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import android.util.Log;
+
+/**
+ * One I/O thread serving every selector based connection of the process.
+ * Handlers run on the loop thread and must never block; other threads hand work over with execute().
+ */
+public class SelectorLoop implements Runnable {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+    private static final String TAG = SelectorLoop.class.getName();
+    /** Size of the buffer the sockets are read into */
+    private static final int READ_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Handles the readiness of a registered channel, called on the loop thread
+     */
+    public interface IHandler {
+        void onReady(SelectionKey key) throws IOException;
+        void onFailure(IOException e);
+    }
+
+    private static volatile SelectorLoop instance = null;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final BufferPool bufferPool = new BufferPool();
+    /** Only used on the loop thread, so a single buffer serves every connection */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private ByteBuffer applicationBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private SelectorLoop() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "WebSocketSelector");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * @return the loop, started on the first call
+     * @throws IOException if the selector cannot be opened
+     */
+    public static SelectorLoop getInstance() throws IOException {
+        if(instance == null) {
+            synchronized(SelectorLoop.class) {
+                if(instance == null) {
+                    SelectorLoop loop = new SelectorLoop();
+                    loop.thread.start();
+                    instance = loop;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Run a task on the loop thread
+     * @param task
+     */
+    public void execute(Runnable task) {
+        this.tasks.add(task);
+        if(Thread.currentThread() != this.thread)
+            this.selector.wakeup();
+    }
+
+    /**
+     * Register a channel, on the loop thread only
+     */
+    public SelectionKey register(SocketChannel channel, int ops, IHandler handler) throws ClosedChannelException {
+        return channel.register(this.selector, ops, handler);
+    }
+
+    public BufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * @return the cleared read buffer, on the loop thread only
+     */
+    public ByteBuffer getReadBuffer() {
+        this.readBuffer.clear();
+        return this.readBuffer;
+    }
+
+    /**
+     * @param size minimum capacity
+     * @return the cleared buffer TLS records are decrypted into, on the loop thread only
+     */
+    public ByteBuffer getApplicationBuffer(int size) {
+        if(this.applicationBuffer.capacity() < size)
+            this.applicationBuffer = ByteBuffer.allocate(size);
+        this.applicationBuffer.clear();
+        return this.applicationBuffer;
+    }
+
+    @Override
+    public void run() {
+        while(true) {
+            try {
+                this.selector.select();
+                Runnable task;
+                while((task = this.tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "task failed: " + e.getMessage());
+                    }
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid())
+                        continue;
+                    IHandler handler = (IHandler) key.attachment();
+                    try {
+                        handler.onReady(key);
+                    } catch (IOException e) {
+                        handler.onFailure(e);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "handler failed: " + e.getMessage());
+                        handler.onFailure(new IOException(e.getMessage()));
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "select failed: " + e.getMessage());
+            }
+        }
+    }
+}
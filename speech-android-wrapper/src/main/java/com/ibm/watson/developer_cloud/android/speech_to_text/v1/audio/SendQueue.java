@@ -0,0 +1,314 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
+
+/**
+ * Bounded queue of outgoing messages in front of the socket.
+ * Messages are handed to the socket only while its own buffer is below a small watermark, so the data
+ * waiting for a slow link stays here where its size and age are bounded by the configured limits.
+ */
+public class SendQueue {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+    private static final String TAG = SendQueue.class.getName();
+
+    /** Bytes the socket may buffer before the queue stops feeding it */
+    public static final int SOCKET_WATERMARK = 32 * 1024;
+    /** Period of the drain timer while messages are waiting (ms) */
+    private static final long DRAIN_PERIOD = 10;
+
+    /**
+     * The socket drained by the queue
+     */
+    public interface ISocket {
+        /**
+         * @return bytes accepted by the socket and not written to the network yet
+         */
+        long getBufferedBytes();
+        void send(String message);
+        void send(byte[] data);
+    }
+
+    /**
+     * Reactions to an overflow that need the uploader
+     */
+    public interface IOverflowHandler {
+        /**
+         * Ask the encoder for a lower bitrate
+         * @return false if the bitrate cannot be reduced any further
+         */
+        boolean onReduceBitrate();
+        /**
+         * The queue is full and the policy is to fail
+         */
+        void onOverflowFailure();
+    }
+
+    private static class Entry {
+        final String text;
+        final byte[] data;
+        final int length;
+        final boolean droppable;
+        final long time = System.currentTimeMillis();
+
+        Entry(String text, byte[] data, boolean droppable) {
+            this.text = text;
+            this.data = data;
+            this.length = text != null ? text.length() : data.length;
+            this.droppable = droppable;
+        }
+    }
+
+    private final ISocket socket;
+    private final IOverflowHandler handler;
+    private final UploadStatistics statistics;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBytes;
+    private final long maxDelay;
+    private final int policy;
+
+    private final LinkedList<Entry> entries = new LinkedList<Entry>();
+    private int bytes = 0;
+    private boolean closed = false;
+    private boolean failed = false;
+    /** Set once producers must no longer wait for room */
+    private boolean unblocked = false;
+    private ScheduledFuture<?> drainTask = null;
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public SendQueue(ISocket socket, IOverflowHandler handler, SpeechConfiguration config, UploadStatistics statistics, ScheduledExecutorService scheduler) {
+        this.socket = socket;
+        this.handler = handler;
+        this.statistics = statistics;
+        this.scheduler = scheduler;
+        this.maxBytes = config.sendQueueMaxBytes;
+        this.maxDelay = config.sendQueueMaxDelay;
+        this.policy = config.sendQueuePolicy;
+    }
+
+    /**
+     * Queue a control message, those are never dropped
+     * @param message
+     */
+    public void offer(String message) {
+        this.offer(new Entry(message, null, false), true);
+    }
+
+    /**
+     * Queue binary data
+     * @param data
+     * @param droppable false for data the stream cannot do without (headers, end of stream)
+     */
+    public void offer(byte[] data, boolean droppable) {
+        this.offer(new Entry(null, data, droppable), true);
+    }
+
+    /**
+     * Queue binary data without waiting for room, for callers that must not block such as timers
+     * @param data
+     * @param droppable false for data the stream cannot do without (headers, end of stream)
+     * @return false if the queue is full and its policy is to block, the data is then not queued
+     */
+    public boolean offerNow(byte[] data, boolean droppable) {
+        return this.offer(new Entry(null, data, droppable), false);
+    }
+
+    /**
+     * @return false if the entry was refused because the queue is full and the caller cannot wait
+     */
+    private boolean offer(Entry entry, boolean wait) {
+        synchronized(this) {
+            if(this.closed || this.failed)
+                return true;
+            if(entry.droppable && this.isFull(entry.length)) {
+                if(!wait && this.policy == SpeechConfiguration.QUEUE_POLICY_BLOCK && !this.unblocked)
+                    return false;
+                if(!this.onOverflow(entry))
+                    return true;
+            }
+            this.entries.addLast(entry);
+            this.bytes += entry.length;
+            this.statistics.onQueueDepth(this.entries.size(), this.bytes);
+        }
+        this.drain();
+        return true;
+    }
+
+    private boolean isFull(int length) {
+        if(this.entries.isEmpty())
+            return false;
+        return this.bytes + length > this.maxBytes
+                || System.currentTimeMillis() - this.entries.getFirst().time > this.maxDelay;
+    }
+
+    /**
+     * Apply the overflow policy, must be called holding the lock
+     * @param entry the entry that does not fit
+     * @return true if the entry must be queued
+     */
+    private boolean onOverflow(Entry entry) {
+        switch(this.policy) {
+            case SpeechConfiguration.QUEUE_POLICY_BLOCK:
+                long start = System.currentTimeMillis();
+                while(this.isFull(entry.length) && !this.closed && !this.failed && !this.unblocked) {
+                    // drain from here, the timer of the queue may be the thread that is waiting
+                    this.drain(false);
+                    if(!this.isFull(entry.length))
+                        break;
+                    try {
+                        this.wait(DRAIN_PERIOD);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                this.statistics.onProducerWait(System.currentTimeMillis() - start);
+                return !this.closed && !this.failed;
+            case SpeechConfiguration.QUEUE_POLICY_REDUCE_BITRATE:
+                if(this.handler.onReduceBitrate()) {
+                    this.statistics.onBitrateReduced();
+                    // the encoder needs time to make a difference, only the byte limit is enforced meanwhile
+                    if(this.bytes + entry.length <= this.maxBytes)
+                        return true;
+                }
+                return this.dropOldest(entry.length);
+            case SpeechConfiguration.QUEUE_POLICY_FAIL:
+                Log.e(TAG, "send queue overflow: " + this.entries.size() + " messages, " + this.bytes + " bytes");
+                this.failed = true;
+                this.statistics.onDropped(entry.length);
+                this.notifyAll();
+                this.handler.onOverflowFailure();
+                return false;
+            default:
+                return this.dropOldest(entry.length);
+        }
+    }
+
+    /**
+     * Drop the oldest audio until the entry fits
+     * @param length
+     * @return always true, the newest audio is kept
+     */
+    private boolean dropOldest(int length) {
+        Iterator<Entry> it = this.entries.iterator();
+        while(it.hasNext() && this.isFull(length)) {
+            Entry e = it.next();
+            if(!e.droppable)
+                continue;
+            it.remove();
+            this.bytes -= e.length;
+            this.statistics.onDropped(e.length);
+        }
+        return true;
+    }
+
+    /**
+     * Hand messages to the socket while it has room for them
+     */
+    public void drain() {
+        this.drain(false);
+    }
+
+    private void drain(boolean all) {
+        synchronized(this) {
+            while(!this.entries.isEmpty() && (all || this.socket.getBufferedBytes() < SOCKET_WATERMARK)) {
+                Entry e = this.entries.removeFirst();
+                this.bytes -= e.length;
+                this.statistics.onQueueDelay(System.currentTimeMillis() - e.time);
+                if(e.text != null)
+                    this.socket.send(e.text);
+                else
+                    this.socket.send(e.data);
+            }
+            this.statistics.onQueueDepth(this.entries.size(), this.bytes);
+            if(this.entries.isEmpty()) {
+                if(this.drainTask != null) {
+                    this.drainTask.cancel(false);
+                    this.drainTask = null;
+                }
+            }
+            else {
+                this.scheduleDrain();
+            }
+            this.notifyAll();
+        }
+    }
+
+    private void scheduleDrain() {
+        if(this.drainTask == null && !this.closed)
+            this.drainTask = this.scheduler.scheduleWithFixedDelay(this.drainRunnable, DRAIN_PERIOD, DRAIN_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Release the producers waiting for room, from now on data is queued over the limits until the queue is closed
+     */
+    public void unblock() {
+        synchronized(this) {
+            this.unblocked = true;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Discard the queued messages, the queue keeps accepting data
+     */
+    public void clear() {
+        synchronized(this) {
+            if(this.drainTask != null) {
+                this.drainTask.cancel(false);
+                this.drainTask = null;
+            }
+            this.entries.clear();
+            this.bytes = 0;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Hand everything to the socket regardless of its buffer, then stop accepting data
+     */
+    public void close() {
+        synchronized(this) {
+            if(!this.failed)
+                this.drain(true);
+            this.closed = true;
+            if(this.drainTask != null) {
+                this.drainTask.cancel(false);
+                this.drainTask = null;
+            }
+            this.entries.clear();
+            this.bytes = 0;
+            this.notifyAll();
+        }
+    }
+}
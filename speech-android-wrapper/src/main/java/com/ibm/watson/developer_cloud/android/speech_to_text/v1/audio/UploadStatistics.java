@@ -0,0 +1,273 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the outbound traffic of an uploader.
+ */
+public class UploadStatistics {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    /** Chunks handed to the uploader by the writers */
+    private final AtomicLong chunks = new AtomicLong();
+    /** Framing bytes those chunks would have cost if each one was sent as its own message */
+    private final AtomicLong chunkOverhead = new AtomicLong();
+    /** WebSocket messages actually sent */
+    private final AtomicLong messages = new AtomicLong();
+    /** Framing bytes of the messages actually sent */
+    private final AtomicLong messageOverhead = new AtomicLong();
+    /** Payload bytes sent */
+    private final AtomicLong payloadBytes = new AtomicLong();
+    /** Creation time */
+    private final long startTime = System.currentTimeMillis();
+
+    /** Messages waiting in the send queue */
+    private volatile int queueDepth = 0;
+    /** Bytes waiting in the send queue */
+    private volatile int queueBytes = 0;
+    /** Highest number of bytes seen in the send queue */
+    private volatile int maxQueueBytes = 0;
+    /** Number of messages that went through the send queue */
+    private final AtomicLong queued = new AtomicLong();
+    /** Total time spent by messages in the send queue (ms) */
+    private final AtomicLong queueDelay = new AtomicLong();
+    /** Longest time spent by a message in the send queue (ms) */
+    private volatile long maxQueueDelay = 0;
+    /** Number of times the producer had to wait for room in the queue */
+    private final AtomicLong producerWaits = new AtomicLong();
+    /** Total time the producer waited (ms) */
+    private final AtomicLong producerWaitTime = new AtomicLong();
+    /** Longest wait of the producer (ms) */
+    private volatile long maxProducerWait = 0;
+    /** Messages dropped because of an overflow */
+    private final AtomicLong droppedMessages = new AtomicLong();
+    /** Bytes dropped because of an overflow */
+    private final AtomicLong droppedBytes = new AtomicLong();
+    /** Number of times the encoder was asked for a lower bitrate */
+    private final AtomicLong bitrateReductions = new AtomicLong();
+    /** Number of times a lost connection was replaced */
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * Size of the header of a masked client frame carrying the given payload (RFC 6455, 5.2)
+     * @param payloadLength
+     * @return header size in bytes
+     */
+    public static int frameOverhead(int payloadLength) {
+        int overhead = 2 + 4;
+        if(payloadLength > 0xFFFF)
+            overhead += 8;
+        else if(payloadLength > 125)
+            overhead += 2;
+        return overhead;
+    }
+
+    /**
+     * A chunk has been handed to the uploader
+     * @param length
+     */
+    public void onChunk(int length) {
+        this.chunks.incrementAndGet();
+        this.chunkOverhead.addAndGet(frameOverhead(length));
+    }
+
+    /**
+     * A message has been sent out
+     * @param length
+     */
+    public void onMessage(int length) {
+        this.messages.incrementAndGet();
+        this.messageOverhead.addAndGet(frameOverhead(length));
+        this.payloadBytes.addAndGet(length);
+    }
+
+    /**
+     * Current depth of the send queue
+     * @param messages
+     * @param bytes
+     */
+    public void onQueueDepth(int messages, int bytes) {
+        this.queueDepth = messages;
+        this.queueBytes = bytes;
+        if(bytes > this.maxQueueBytes)
+            this.maxQueueBytes = bytes;
+    }
+
+    /**
+     * A message left the send queue
+     * @param delay time it spent in the queue (ms)
+     */
+    public void onQueueDelay(long delay) {
+        this.queued.incrementAndGet();
+        this.queueDelay.addAndGet(delay);
+        if(delay > this.maxQueueDelay)
+            this.maxQueueDelay = delay;
+    }
+
+    /**
+     * The producer was blocked by a full queue
+     * @param wait (ms)
+     */
+    public void onProducerWait(long wait) {
+        this.producerWaits.incrementAndGet();
+        this.producerWaitTime.addAndGet(wait);
+        if(wait > this.maxProducerWait)
+            this.maxProducerWait = wait;
+    }
+
+    /**
+     * Data was dropped because of an overflow
+     * @param length
+     */
+    public void onDropped(int length) {
+        this.droppedMessages.incrementAndGet();
+        this.droppedBytes.addAndGet(length);
+    }
+
+    public void onBitrateReduced() {
+        this.bitrateReductions.incrementAndGet();
+    }
+
+    public void onReconnect() {
+        this.reconnects.incrementAndGet();
+    }
+
+    public long getChunkCount() {
+        return this.chunks.get();
+    }
+
+    public long getMessageCount() {
+        return this.messages.get();
+    }
+
+    public long getPayloadBytes() {
+        return this.payloadBytes.get();
+    }
+
+    /**
+     * @return number of messages saved by coalescing
+     */
+    public long getFramesSaved() {
+        return Math.max(0, this.chunks.get() - this.messages.get());
+    }
+
+    /**
+     * @return number of framing bytes saved by coalescing
+     */
+    public long getBytesSaved() {
+        return Math.max(0, this.chunkOverhead.get() - this.messageOverhead.get());
+    }
+
+    /**
+     * @return messages sent per second since the uploader was created
+     */
+    public double getFramesPerSecond() {
+        return perSecond(this.messages.get());
+    }
+
+    /**
+     * @return payload and framing bytes sent per second since the uploader was created
+     */
+    public double getBytesPerSecond() {
+        return perSecond(this.payloadBytes.get() + this.messageOverhead.get());
+    }
+
+    public double getFramesSavedPerSecond() {
+        return perSecond(getFramesSaved());
+    }
+
+    public double getBytesSavedPerSecond() {
+        return perSecond(getBytesSaved());
+    }
+
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+
+    public int getQueueBytes() {
+        return this.queueBytes;
+    }
+
+    public int getMaxQueueBytes() {
+        return this.maxQueueBytes;
+    }
+
+    /**
+     * @return average time spent by a message in the send queue (ms)
+     */
+    public double getAverageQueueDelay() {
+        long count = this.queued.get();
+        return count > 0 ? this.queueDelay.get() / (double) count : 0;
+    }
+
+    public long getMaxQueueDelay() {
+        return this.maxQueueDelay;
+    }
+
+    public long getProducerWaits() {
+        return this.producerWaits.get();
+    }
+
+    /**
+     * @return total time the producer was blocked by a full queue (ms)
+     */
+    public long getProducerWaitTime() {
+        return this.producerWaitTime.get();
+    }
+
+    public long getMaxProducerWait() {
+        return this.maxProducerWait;
+    }
+
+    public long getDroppedMessages() {
+        return this.droppedMessages.get();
+    }
+
+    public long getDroppedBytes() {
+        return this.droppedBytes.get();
+    }
+
+    public long getBitrateReductions() {
+        return this.bitrateReductions.get();
+    }
+
+    public long getReconnects() {
+        return this.reconnects.get();
+    }
+
+    private double perSecond(long value) {
+        long elapsed = System.currentTimeMillis() - this.startTime;
+        return elapsed > 0 ? value * 1000.0 / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "chunks: " + getChunkCount() + ", messages: " + getMessageCount()
+                + ", frames/s: " + String.format("%.1f", getFramesPerSecond())
+                + ", bytes/s: " + String.format("%.1f", getBytesPerSecond())
+                + ", frames saved/s: " + String.format("%.1f", getFramesSavedPerSecond())
+                + ", bytes saved/s: " + String.format("%.1f", getBytesSavedPerSecond())
+                + ", max queued bytes: " + getMaxQueueBytes()
+                + ", avg queue delay: " + String.format("%.1f", getAverageQueueDelay()) + "ms"
+                + ", producer wait: " + getProducerWaitTime() + "ms"
+                + ", dropped bytes: " + getDroppedBytes()
+                + ", reconnects: " + getReconnects();
+    }
+}
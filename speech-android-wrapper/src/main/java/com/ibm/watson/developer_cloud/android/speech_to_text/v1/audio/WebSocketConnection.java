@@ -0,0 +1,109 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+
+/**
+ * WebSocket connection on the java_websocket client, which runs its own read and write threads.
+ * A java_websocket client cannot be connected twice, the uploader creates a new one every time it reconnects.
+ */
+public class WebSocketConnection extends WebSocketClient implements IWebSocketConnection {
+    // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+
+    private final IListener listener;
+    private boolean secure = false;
+
+    public WebSocketConnection(URI serverURI, Map<String, String> header, IListener listener) {
+        super(serverURI, new Draft_17(), header);
+        this.listener = listener;
+    }
+
+    @Override
+    public void secure() throws GeneralSecurityException {
+        this.secure = true;
+        this.setWebSocketFactory(SecureWebSocketClientFactory.getInstance().withListener(new SecureWebSocketClientFactory.IHandshakeListener() {
+            @Override
+            public void onHandshakeFinished() {
+                listener.onTransportReady(WebSocketConnection.this);
+            }
+        }));
+    }
+
+    @Override
+    public boolean isConnected() {
+        WebSocket conn = this.getConnection();
+        return conn != null && conn.isOpen();
+    }
+
+    @Override
+    public boolean isLost() {
+        WebSocket conn = this.getConnection();
+        return conn != null && (conn.isClosed() || conn.isClosing());
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        WebSocket conn = this.getConnection();
+        if(!(conn instanceof WebSocketImpl))
+            return 0;
+        long bytes = 0;
+        for(ByteBuffer buffer : ((WebSocketImpl) conn).outQueue)
+            bytes += buffer.remaining();
+        return bytes;
+    }
+
+    @Override
+    public void onWebsocketHandshakeSentAsClient(WebSocket conn, ClientHandshake request) throws InvalidDataException {
+        super.onWebsocketHandshakeSentAsClient(conn, request);
+        // TCP is connected, a secure connection is ready once its TLS handshake is verified
+        if(!this.secure)
+            this.listener.onTransportReady(this);
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshake) {
+        this.listener.onOpen(this);
+    }
+
+    @Override
+    public void onMessage(String message) {
+        this.listener.onMessage(this, message);
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        this.listener.onClose(this, code, reason, remote);
+    }
+
+    @Override
+    public void onError(Exception ex) {
+        this.listener.onError(this, ex);
+    }
+}
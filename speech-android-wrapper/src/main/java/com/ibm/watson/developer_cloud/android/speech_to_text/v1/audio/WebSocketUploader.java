@@ -21,42 +21,118 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.NotYetConnectedException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
-import org.java_websocket.client.DefaultSSLWebSocketClientFactory;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.drafts.Draft_17;
-import org.java_websocket.handshake.ServerHandshake;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.util.Log;
 
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
 import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.DelegateDispatcher;
 import com.ibm.watson.developer_cloud.android.speech_to_text.v1.ISpeechDelegate;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.IUtteranceDelegate;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.RecognitionResultParser;
 
-public class WebSocketUploader extends WebSocketClient implements IChunkUploader {
+public class WebSocketUploader implements IChunkUploader, IWebSocketConnection.IListener {
     // Use PROPRIETARY notice if class contains a main() method, otherwise use COPYRIGHT notice.
     public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
     private static final String TAG = WebSocketUploader.class.getName();
-
+    /** Maximum time (ms) a new utterance waits for the results of the previous one */
+    private static final long UTTERANCE_END_TIMEOUT = 10000;
+    /** Longest delay (ms) between two reconnection attempts */
+    private static final long MAX_RECONNECT_DELAY = 4000;
+    /** Bytes of raw audio per second */
+    private static final int BYTES_PER_SECOND = SpeechConfiguration.SAMPLE_RATE * 2;
+
+    /** Encoder of the current audio stream, null before the first utterance and once the stream is finished */
     private ISpeechEncoder encoder = null;
+    /** Serializes the encoding with the replacement of the encoder, whose native state is freed */
+    private final Object encoderLock = new Object();
     private Thread initStreamToServerThread;
-
-    private boolean uploadPrepared = false;
+    /** Connecting thread of a warm connection, opened before the recognition starts */
+    private Thread preconnectThread = null;
+    /** Set once the delegate has been told that the connection is open */
+    private volatile boolean openNotified = false;
+    /** Set once the connection has been closed or has failed for good */
+    private volatile boolean connectionLost = false;
+    /** Set once close() has been called */
+    private volatile boolean closed = false;
+
+    private volatile boolean uploadPrepared = false;
+
+    /** Server address */
+    private final URI serverURI;
+    /** Headers of the WebSocket upgrade request */
+    private final Map<String, String> header;
+    /** Current connection, replaced on reconnection */
+    private volatile IWebSocketConnection connection = null;
 
     /** STT delegate */
     private ISpeechDelegate delegate = null;
+    /** Calls the delegate off the connection thread, null when the delegate is called directly */
+    private DelegateDispatcher dispatcher = null;
     /** Recorder delegate */
     private SpeechConfiguration sConfig = null;
+    /** Merges small chunks into larger messages, null when coalescing is disabled */
+    private FrameCoalescer coalescer = null;
+    /** Outbound traffic counters */
+    private final UploadStatistics statistics = new UploadStatistics();
+    /** Bounded queue of the messages waiting for the network */
+    private SendQueue sendQueue = null;
+    /** Set once the start message and the stream headers are out, audio sent after that may be dropped on overflow */
+    private volatile boolean streamStarted = false;
+
+    /**
+     * An utterance whose results are still expected from the server
+     */
+    private static class Utterance {
+        final int id;
+        final ISpeechDelegate delegate;
+        final RecognitionTimeline timeline;
+        /** The server is listening once after the start message, and once again after the last result */
+        int listeningStates = 0;
+
+        Utterance(int id, ISpeechDelegate delegate, RecognitionTimeline timeline) {
+            this.id = id;
+            this.delegate = delegate;
+            this.timeline = timeline;
+        }
+    }
+    /** Utterances sent on this connection and not completed yet, in order */
+    private final LinkedList<Utterance> utterances = new LinkedList<Utterance>();
+    /** Number of utterances started on this connection */
+    private int utteranceCount = 0;
+    /** Closes an idle persistent connection */
+    private ScheduledFuture<?> idleClose = null;
+
+    /** Raw audio of the current utterance not finalized by the server, null when reconnection is disabled */
+    private ReplayBuffer replayBuffer = null;
+    /** Keeps result indexes and timestamps consistent across reconnections */
+    private final ResultAligner aligner = new ResultAligner();
+    /** Serializes the live audio with the replayed audio */
+    private final Object replayLock = new Object();
+    /** Set while a lost connection is being replaced */
+    private volatile boolean reconnecting = false;
+    /** Set once the end of the current utterance has been sent */
+    private volatile boolean utteranceStopped = false;
+
+    /** Steps of the current (or last) recognition */
+    private volatile RecognitionTimeline timeline = null;
+    /** Aggregates the timelines of the completed recognitions, may be null */
+    private volatile LatencyStatistics latencyStatistics = null;
+    /** Steps of the current connection, which may have been opened before the recognition */
+    private volatile long connectStartTime = 0;
+    private volatile long transportReadyTime = 0;
+    private volatile long openTime = 0;
 
     /**
      * Create an uploader which supports streaming.
@@ -65,58 +141,119 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
      * @throws URISyntaxException
      */
     public WebSocketUploader(String serverURL, Map<String, String> header, SpeechConfiguration config) throws URISyntaxException {
-        super(new URI(serverURL), new Draft_17(), header);
         Log.d(TAG, "New WebSocketUploader: " + serverURL);
         Log.d(TAG, serverURL);
+        this.serverURI = new URI(serverURL);
+        this.header = header;
         this.sConfig = config;
 
-        if(sConfig.audioFormat.equals(SpeechConfiguration.AUDIO_FORMAT_DEFAULT)) {
-            this.encoder = new RawEnc();
-        }
-        else if(sConfig.audioFormat.equals(SpeechConfiguration.AUDIO_FORMAT_OGGOPUS)){
-            this.encoder = new OggOpusEnc();
-        }
-
         if(serverURL.toLowerCase().startsWith("wss") || serverURL.toLowerCase().startsWith("https"))
             this.sConfig.isSSL = true;
         else this.sConfig.isSSL = false;
+
+        this.sendQueue = new SendQueue(new SendQueue.ISocket() {
+            @Override
+            public long getBufferedBytes() {
+                IWebSocketConnection conn = connection;
+                return conn != null ? conn.getBufferedBytes() : 0;
+            }
+            @Override
+            public void send(String message) {
+                sendMessage(message);
+            }
+            @Override
+            public void send(byte[] data) {
+                sendMessage(data);
+            }
+        }, new SendQueue.IOverflowHandler() {
+            @Override
+            public boolean onReduceBitrate() {
+                ISpeechEncoder e = encoder;
+                return e != null && e.reduceBitrate();
+            }
+            @Override
+            public void onOverflowFailure() {
+                Log.e(TAG, "Send queue overflow, closing the connection");
+                if (delegate != null){
+                    delegate.onError("Send queue overflow");
+                }
+                close();
+            }
+        }, sConfig, this.statistics, SharedExecutors.getScheduler());
+
+        if(sConfig.coalescingDelay > 0) {
+            this.coalescer = new FrameCoalescer(new FrameCoalescer.ISink() {
+                @Override
+                public void send(byte[] data) {
+                    sendQueue.offer(data, streamStarted);
+                }
+                @Override
+                public boolean offer(byte[] data) {
+                    return sendQueue.offerNow(data, streamStarted);
+                }
+            }, sConfig.coalescingThreshold, sConfig.coalescingDelay, SharedExecutors.getScheduler());
+        }
+
+        if(sConfig.autoReconnect)
+            this.replayBuffer = new ReplayBuffer(sConfig.replayBufferMaxBytes);
     }
     /**
-     * Trust server
+     * Create the encoder of the configured audio format
+     */
+    private ISpeechEncoder createEncoder() {
+        if(sConfig.audioFormat.equals(SpeechConfiguration.AUDIO_FORMAT_OGGOPUS))
+            return new OggOpusEnc();
+        return new RawEnc();
+    }
+    /**
+     * Create a new connection to the server, not connected yet
      *
-     * @throws KeyManagementException
-     * @throws NoSuchAlgorithmException
+     * @throws Exception
      */
-    private void trustServer() throws KeyManagementException, NoSuchAlgorithmException {
-        // Create a trust manager that does not validate certificate chains
-        TrustManager[] certs = new TrustManager[]{ new X509TrustManager() {
-            public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                return new java.security.cert.X509Certificate[]{};
-            }
-            public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {}
-            public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException{ }
-        }};
-        SSLContext sslContext = null;
-        sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(null, certs, new java.security.SecureRandom());
-        this.setWebSocketFactory(new DefaultSSLWebSocketClientFactory(sslContext));
+    private IWebSocketConnection createConnection() throws Exception {
+        this.connectStartTime = System.currentTimeMillis();
+        this.transportReadyTime = 0;
+        this.openTime = 0;
+        RecognitionTimeline t = this.timeline;
+        if(t != null)
+            t.onConnectStart(this.connectStartTime);
+        IWebSocketConnection conn;
+        if(this.sConfig.selectorTransport)
+            conn = new SelectorConnection(this.serverURI, this.header, this);
+        else
+            conn = new WebSocketConnection(this.serverURI, this.header, this);
+        if(this.sConfig.isSSL)
+            conn.secure();
+        return conn;
     }
     /**
-     * 1. Initialize WebSocket connection </br>
-     * 2. Init an encoder and writer
+     * Start a new audio stream with a new encoder, the encoder of the previous stream is released
+     *
+     * @throws IOException
+     */
+    private void newEncoder() throws IOException {
+        ISpeechEncoder encoder = this.createEncoder();
+        encoder.initEncoderWithUploader(this);
+        ISpeechEncoder previous;
+        synchronized(this.encoderLock) {
+            previous = this.encoder;
+            this.encoder = encoder;
+        }
+        if(previous != null)
+            previous.release();
+    }
+    /**
+     * Initialize WebSocket connection
      *
      * @throws Exception
      */
-    private void initStreamAudioToServer() throws Exception {
+    private void connectToServer() throws Exception {
         Log.d(TAG, "Connecting...");
-        //lifted up for initializing writer, using isRunning to control the flow
-        this.encoder.initEncoderWithUploader(this);
-
-        if(this.sConfig.isSSL)
-            this.trustServer();
+        IWebSocketConnection conn = this.createConnection();
+        this.connection = conn;
 
         boolean rc;
-        rc = this.connectBlocking();
+        rc = conn.connectBlocking();
 
         if (!rc) {
             Log.e(TAG, "Connection failed!");
@@ -124,23 +261,128 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
             throw new Exception("Connection failed!");
         }
         Log.d(TAG, "Connected");
-        this.sendSpeechHeader();
+    }
+
+    /**
+     * Connect to the server (or wait for the warm connection) then send the start message
+     *
+     * @throws Exception
+     */
+    private void initStreamAudioToServer() throws Exception {
+        if(this.isConnected()) {
+            // persistent connection, the previous utterance is still being processed
+            this.waitForUtterances();
+            this.notifyOpen();
+        }
+        else if(this.preconnectThread != null) {
+            this.preconnectThread.join();
+            if(!this.isConnected()) {
+                Log.e(TAG, "Warm connection failed!");
+                throw new Exception("Connection failed!");
+            }
+            this.notifyOpen();
+        }
+        else {
+            this.connectToServer();
+        }
+        this.startUtterance();
+    }
+
+    /**
+     * Wait until the server has returned the results of every utterance sent so far
+     */
+    private void waitForUtterances() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + UTTERANCE_END_TIMEOUT;
+        synchronized(this.utterances) {
+            while(!this.utterances.isEmpty() && System.currentTimeMillis() < deadline && !this.connectionLost)
+                this.utterances.wait(100);
+            if(!this.utterances.isEmpty())
+                Log.w(TAG, "starting a new utterance before the end of the previous one");
+        }
+    }
+
+    /**
+     * Start a new audio stream on the connection
+     */
+    private void startUtterance() throws IOException {
+        // every utterance is a new audio stream with its own headers
+        this.streamStarted = false;
+        this.newEncoder();
+        Utterance utterance;
+        synchronized(this.utterances) {
+            this.cancelIdleClose();
+            utterance = new Utterance(++this.utteranceCount, this.delegate, this.timeline);
+            this.utterances.addLast(utterance);
+        }
+        this.startStream();
+        if(utterance.delegate instanceof IUtteranceDelegate)
+            ((IUtteranceDelegate) utterance.delegate).onUtteranceStart(utterance.id);
+    }
+
+    /**
+     * Send the start message, then the audio captured while connecting, then accept the live audio
+     */
+    private void startStream() throws IOException {
+        synchronized(this.replayLock) {
+            this.sendSpeechHeader();
+            if(this.replayBuffer != null) {
+                synchronized(this.encoderLock) {
+                    for(byte[] chunk : this.replayBuffer.getChunks())
+                        this.encoder.encodeAndWrite(chunk);
+                }
+            }
+            // audio is accepted once the start message is out
+            this.uploadPrepared = true;
+        }
+    }
+
+    /**
+     * Open the connection ahead of time, the start message is sent by prepare()
+     */
+    public void preconnect() {
+        preconnectThread = new Thread() {
+            public void run() {
+                try {
+                    connectToServer();
+                    Log.d(TAG, "Warm WebSocket connection established");
+                } catch (Exception e) {
+                    Log.e(TAG, "Warm connection failed: " + e.getMessage());
+                    close();
+                }
+            }
+        };
+        preconnectThread.setName("preconnectThread");
+        preconnectThread.start();
+    }
+
+    /**
+     * @return true if the WebSocket connection is open
+     */
+    public boolean isConnected() {
+        IWebSocketConnection conn = this.connection;
+        return conn != null && conn.isConnected();
     }
 
     @Override
     public int onHasData(byte[] buffer) {
+        RecognitionTimeline t = this.timeline;
+        if(t != null)
+            t.onFirstAudio(System.currentTimeMillis());
+        if(this.replayBuffer != null) {
+            synchronized(this.replayLock) {
+                this.replayBuffer.append(buffer);
+                // while (re)connecting the audio waits in the replay buffer
+                if (!this.isUploadPrepared())
+                    return 0;
+                return this.encode(buffer);
+            }
+        }
         int uploadedAudioSize = 0;
         // NOW, WE HAVE STATUS OF UPLOAD PREPARING, UPLOAD PREPARING OK
         if (this.isUploadPrepared()) {
-            try {
-                uploadedAudioSize = encoder.encodeAndWrite(buffer);
-                Log.d(TAG, "onHasData: " + uploadedAudioSize + " " + buffer.length);
-                // TODO: Capturing data
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            uploadedAudioSize = this.encode(buffer);
         }
-        else {
+        else if (initStreamToServerThread != null) {
             try {
                 Log.w(TAG, "waiting for establishing the connection");
                 initStreamToServerThread.join();
@@ -152,6 +394,23 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
         return uploadedAudioSize;
     }
 
+    private int encode(byte[] buffer) {
+        int uploadedAudioSize = 0;
+        synchronized(this.encoderLock) {
+            // audio captured after stop() does not belong to the finished stream
+            if(this.encoder == null)
+                return 0;
+            try {
+                uploadedAudioSize = this.encoder.encodeAndWrite(buffer);
+                Log.d(TAG, "onHasData: " + uploadedAudioSize + " " + buffer.length);
+                // TODO: Capturing data
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return uploadedAudioSize;
+    }
+
     @Override
     public boolean isUploadPrepared() {
         return this.uploadPrepared;
@@ -168,6 +427,30 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
     @Override
     public void prepare() {
         this.uploadPrepared = false;
+        this.utteranceStopped = false;
+        // every recognition tells its delegate that the connection is open, even on a persistent one
+        this.openNotified = false;
+        this.newTimeline();
+        if(this.replayBuffer != null) {
+            this.replayBuffer.reset();
+            this.aligner.reset();
+        }
+        boolean idle;
+        synchronized(this.utterances) {
+            idle = this.utterances.isEmpty();
+        }
+        if(this.isConnected() && idle) {
+            // warm or persistent connection, nothing to wait for
+            Log.d(TAG, "Using the open WebSocket connection");
+            this.notifyOpen();
+            try {
+                this.startUtterance();
+            } catch (IOException e) {
+                Log.e(TAG, "Encoder initialization failed: " + e.getMessage());
+                close();
+            }
+            return;
+        }
         initStreamToServerThread = new Thread() {
             public void run() {
                 try {
@@ -196,14 +479,90 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
         initStreamToServerThread.start();
     }
 
+    /**
+     * Start the timeline of a new recognition with the steps of the connection already done
+     */
+    private void newTimeline() {
+        RecognitionTimeline t = new RecognitionTimeline(System.currentTimeMillis());
+        this.timeline = t;
+        if(this.connectStartTime != 0)
+            t.onConnectStart(this.connectStartTime);
+        if(this.transportReadyTime != 0)
+            t.onTransportReady(this.transportReadyTime);
+        if(this.openTime != 0)
+            t.onOpen(this.openTime);
+    }
+
+    /**
+     * The recognition of the timeline is over, add it to the aggregates
+     */
+    private void completeTimeline(RecognitionTimeline t) {
+        LatencyStatistics stats = this.latencyStatistics;
+        if(t != null && stats != null)
+            stats.add(t);
+    }
+
+    /**
+     * The connection is gone, close the timelines of the pending recognitions
+     */
+    private void closeTimelines() {
+        long now = System.currentTimeMillis();
+        List<RecognitionTimeline> timelines = new ArrayList<RecognitionTimeline>();
+        synchronized(this.utterances) {
+            for(Utterance u : this.utterances)
+                timelines.add(u.timeline);
+        }
+        RecognitionTimeline current = this.timeline;
+        if(current != null && !timelines.contains(current))
+            timelines.add(current);
+        for(RecognitionTimeline t : timelines) {
+            if(t != null) {
+                t.onClose(now);
+                this.completeTimeline(t);
+            }
+        }
+    }
+
     /**
      * Write string into socket
      *
      * @param message
      */
     public void upload(String message){
+        // keep the order of the messages on the wire
+        if(this.coalescer != null)
+            this.coalescer.flush();
+        this.sendQueue.offer(message);
+    }
+
+    /**
+     * Write data into socket
+     *
+     * @param data
+     */
+    public void upload(byte[] data){
+        this.statistics.onChunk(data.length);
+        if(this.coalescer != null && data.length > 0)
+            this.coalescer.write(data);
+        else
+            this.sendQueue.offer(data, this.streamStarted && data.length > 0);
+    }
+
+    /**
+     * Send one WebSocket text message
+     *
+     * @param message
+     */
+    private void sendMessage(String message){
+        IWebSocketConnection conn = this.connection;
+        if(conn == null)
+            return;
         try{
-            this.send(message);
+            conn.send(message);
+            // the only text message is the start of an utterance
+            RecognitionTimeline t = this.timeline;
+            if(t != null)
+                t.onStartSent(System.currentTimeMillis());
         }
         catch(NotYetConnectedException ex){
             Log.e(TAG, ex.getLocalizedMessage());
@@ -211,13 +570,20 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
     }
 
     /**
-     * Write data into socket
+     * Send one WebSocket binary message
      *
      * @param data
      */
-    public void upload(byte[] data){
+    private void sendMessage(byte[] data){
+        IWebSocketConnection conn = this.connection;
+        if(conn == null)
+            return;
         try{
-            this.send(data);
+            conn.send(data);
+            this.statistics.onMessage(data.length);
+            RecognitionTimeline t = this.timeline;
+            if(t != null && data.length > 0)
+                t.onAudioSent(System.currentTimeMillis());
         }
         catch(NotYetConnectedException ex){
             Log.e(TAG, ex.getLocalizedMessage());
@@ -225,55 +591,346 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
     }
 
     /**
-     * Stop by sending out zero byte of data
+     * Stop by sending out zero byte of data.
+     * A started stream is first finished by closing its encoder, which sends the audio it buffers
+     * and the end of the stream, then calls stop() again.
      */
     public void stop(){
+        this.utteranceStopped = true;
+        ISpeechEncoder finished = null;
+        if(this.uploadPrepared) {
+            synchronized(this.encoderLock) {
+                finished = this.encoder;
+                this.encoder = null;
+            }
+        }
+        if(finished != null) {
+            finished.close();
+            return;
+        }
+        // the empty message delimits the audio, it must not be merged with the pending data
+        if(this.coalescer != null)
+            this.coalescer.flush();
         byte[] stopData = new byte[0];
         this.upload(stopData);
     }
 
+    /**
+     * Close the persistent connection once it has been idle for the configured time
+     */
+    private void scheduleIdleClose() {
+        this.cancelIdleClose();
+        this.idleClose = SharedExecutors.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, "closing the idle persistent connection");
+                close();
+            }
+        }, this.sConfig.sessionIdleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelIdleClose() {
+        if(this.idleClose != null) {
+            this.idleClose.cancel(false);
+            this.idleClose = null;
+        }
+    }
+
+    @Override
+    public boolean isConnectionLost() {
+        if(this.connectionLost)
+            return true;
+        IWebSocketConnection conn = this.connection;
+        return !this.reconnecting && conn != null && conn.isLost();
+    }
+
     @Override
     public void close() {
         Log.d(TAG, "closing the websocket");
-        super.close();
+        this.closed = true;
+        synchronized(this.utterances) {
+            this.cancelIdleClose();
+        }
+        // a producer waiting for room holds the coalescer, and close() may run on the shared timer
+        this.sendQueue.unblock();
+        if(this.coalescer != null)
+            this.coalescer.flush();
+        this.sendQueue.close();
+        Log.d(TAG, "upload statistics: " + this.statistics);
+        IWebSocketConnection conn = this.connection;
+        if(conn != null)
+            conn.close();
+        ISpeechEncoder last;
+        synchronized(this.encoderLock) {
+            last = this.encoder;
+            this.encoder = null;
+        }
+        if(last != null)
+            last.release();
     }
 
     @Override
-    public void onClose(int code, String reason, boolean remote) {
+    public UploadStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    @Override
+    public RecognitionTimeline getTimeline() {
+        return this.timeline;
+    }
+
+    /**
+     * @param stats aggregates the timelines of the completed recognitions
+     */
+    public void setLatencyStatistics(LatencyStatistics stats) {
+        this.latencyStatistics = stats;
+    }
+
+    /**
+     * @return true if the audio of an unfinished utterance can be replayed on a new connection
+     */
+    private boolean canReconnect() {
+        if(this.replayBuffer == null || this.closed || this.connectionLost)
+            return false;
+        synchronized(this.utterances) {
+            return !this.utterances.isEmpty();
+        }
+    }
+
+    /**
+     * Replace the lost connection and replay the audio the server has not finalized
+     */
+    private void reconnect() {
+        this.reconnecting = true;
+        this.uploadPrepared = false;
+        if(this.coalescer != null)
+            this.coalescer.discard();
+        // what was waiting for the lost connection is replayed from the raw audio
+        this.sendQueue.clear();
+        Thread reconnectThread = new Thread() {
+            public void run() {
+                long delay = sConfig.reconnectBaseDelay;
+                for(int attempt = 1; attempt <= sConfig.reconnectMaxAttempts && !closed; attempt++) {
+                    try {
+                        Thread.sleep(delay);
+                        Log.d(TAG, "reconnecting, attempt " + attempt);
+                        if(resumeStream()) {
+                            statistics.onReconnect();
+                            RecognitionTimeline t = timeline;
+                            if(t != null)
+                                t.onReconnect();
+                            reconnecting = false;
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        break;
+                    } catch (Exception e) {
+                        Log.e(TAG, "Reconnection failed: " + e.getMessage());
+                    }
+                    delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+                }
+                Log.e(TAG, "Unable to reconnect");
+                reconnecting = false;
+                connectionLost = true;
+                sendQueue.close();
+                closeTimelines();
+                for(ISpeechDelegate d : takeDelegates()) {
+                    d.onError("Connection lost");
+                }
+            }
+        };
+        reconnectThread.setName("reconnectThread");
+        reconnectThread.start();
+    }
+
+    /**
+     * Open a new connection, start a new stream and replay the retained audio
+     *
+     * @return false if the connection could not be established
+     * @throws Exception
+     */
+    private boolean resumeStream() throws Exception {
+        this.streamStarted = false;
+        // the stream restarts from its headers, the encoder of the lost stream is released
+        this.newEncoder();
+        IWebSocketConnection conn = this.createConnection();
+        this.connection = conn;
+        if(!conn.connectBlocking())
+            return false;
+
+        List<ISpeechDelegate> failed = new ArrayList<ISpeechDelegate>();
+        synchronized(this.utterances) {
+            // only the audio of the last utterance is retained
+            while(this.utterances.size() > 1) {
+                Utterance u = this.utterances.removeFirst();
+                if(u.delegate != null && !failed.contains(u.delegate))
+                    failed.add(u.delegate);
+            }
+            if(this.utterances.isEmpty())
+                return true;
+            this.utterances.getFirst().listeningStates = 0;
+        }
+        for(ISpeechDelegate d : failed) {
+            d.onError("Connection lost");
+        }
+
+        this.aligner.onReconnect(this.replayBuffer.getStartOffset() / (double) BYTES_PER_SECOND);
+        Log.d(TAG, "replaying " + (this.replayBuffer.getEndOffset() - this.replayBuffer.getStartOffset()) + " bytes of audio");
+        this.startStream();
+        if(this.utteranceStopped)
+            this.stop();
+        return true;
+    }
+
+    @Override
+    public void onClose(IWebSocketConnection conn, int code, String reason, boolean remote) {
+        if(conn != this.connection || this.reconnecting)
+            return;
         Log.d(TAG, "WebSocket closed");
         this.uploadPrepared = false;
         Log.d(TAG, "### Code: " + code + " reason: " + reason + " remote: " + remote);
-        if (delegate != null){
-            delegate.onClose(code, reason, remote);
+        if(this.canReconnect()) {
+            this.reconnect();
+            return;
+        }
+        this.connectionLost = true;
+        // release a producer blocked on a full queue
+        this.sendQueue.close();
+        this.closeTimelines();
+        for(ISpeechDelegate d : this.takeDelegates()) {
+            d.onClose(code, reason, remote);
         }
     }
 
     @Override
-    public void onError(Exception ex) {
+    public void onError(IWebSocketConnection conn, Exception ex) {
+        if(conn != this.connection || this.reconnecting)
+            return;
         Log.e(TAG, "WebSocket error");
         Log.e(TAG, ex.getMessage());
         // Send the error message to the delegate
         this.uploadPrepared = false;
+        if(this.canReconnect()) {
+            this.reconnect();
+            return;
+        }
+        this.connectionLost = true;
+        this.closeTimelines();
         //this.sendMessage(ISpeechDelegate.ERROR);
-        if (delegate != null){
-            delegate.onError(ex.getMessage());
+        for(ISpeechDelegate d : this.takeDelegates()) {
+            d.onError(ex.getMessage());
         }
     }
 
+    /**
+     * Delegates of the pending utterances and the current delegate, the pending utterances are dropped
+     */
+    private List<ISpeechDelegate> takeDelegates() {
+        List<ISpeechDelegate> delegates = new ArrayList<ISpeechDelegate>();
+        synchronized(this.utterances) {
+            for(Utterance u : this.utterances) {
+                if(u.delegate != null && !delegates.contains(u.delegate))
+                    delegates.add(u.delegate);
+            }
+            this.utterances.clear();
+            this.utterances.notifyAll();
+        }
+        if(this.delegate != null && !delegates.contains(this.delegate))
+            delegates.add(this.delegate);
+        return delegates;
+    }
+
     @Override
-    public void onMessage(String message) {
+    public void onMessage(IWebSocketConnection conn, String message) {
+        if(conn != this.connection)
+            return;
 
         Log.d(TAG + "onMessage", message);
-        if (delegate != null){
-            delegate.onMessage(message);
+        // results come back in the order the utterances were sent
+        Utterance current;
+        boolean latest;
+        synchronized(this.utterances) {
+            current = this.utterances.peekFirst();
+            latest = current != null && current == this.utterances.peekLast();
+        }
+        if(this.replayBuffer != null && latest) {
+            message = this.aligner.align(message);
+            if(message == null)
+                return;
+            // audio covered by final results will never be replayed
+            long finalized = (long) (this.aligner.getFinalizedUntil() * BYTES_PER_SECOND);
+            this.replayBuffer.trimTo(finalized - finalized % 2);
+        }
+        long now = System.currentTimeMillis();
+        // parsed once, for the timeline and the delegate
+        RecognitionResult[] results = RecognitionResultParser.parse(message);
+        if(current != null && current.timeline != null)
+            current.timeline.onMessage(now, results);
+        ISpeechDelegate target = current != null ? current.delegate : this.delegate;
+        if (target != null){
+            RecognitionResultParser.deliver(target, message, results);
+        }
+        if(current != null && isListeningState(message) && ++current.listeningStates == 2) {
+            boolean idle;
+            synchronized(this.utterances) {
+                this.utterances.remove(current);
+                idle = this.utterances.isEmpty();
+                this.utterances.notifyAll();
+                if(idle && this.sConfig.persistentSession && !this.connectionLost)
+                    this.scheduleIdleClose();
+            }
+            Log.d(TAG, "utterance " + current.id + " completed");
+            if(current.timeline != null) {
+                current.timeline.onEnd(now);
+                this.completeTimeline(current.timeline);
+                Log.d(TAG, "timeline: " + current.timeline);
+            }
+            if(current.delegate instanceof IUtteranceDelegate)
+                ((IUtteranceDelegate) current.delegate).onUtteranceEnd(current.id);
+        }
+    }
+
+    /**
+     * @return true if the message is the state message the server sends when it waits for audio
+     */
+    private static boolean isListeningState(String message) {
+        if(message.indexOf("\"state\"") < 0)
+            return false;
+        try {
+            return "listening".equals(new JSONObject(message).optString("state"));
+        } catch (JSONException e) {
+            return false;
         }
     }
 
     @Override
-    public void onOpen(ServerHandshake arg0) {
+    public void onTransportReady(IWebSocketConnection conn) {
+        if(conn != this.connection)
+            return;
+        this.transportReadyTime = System.currentTimeMillis();
+        RecognitionTimeline t = this.timeline;
+        if(t != null)
+            t.onTransportReady(this.transportReadyTime);
+    }
+
+    @Override
+    public void onOpen(IWebSocketConnection conn) {
         Log.d(TAG, "WS connection opened successfully");
-        this.uploadPrepared = true;
-        if (delegate != null){
+        if(conn == this.connection) {
+            this.openTime = System.currentTimeMillis();
+            RecognitionTimeline t = this.timeline;
+            if(t != null)
+                t.onOpen(this.openTime);
+        }
+        this.notifyOpen();
+    }
+
+    /**
+     * Tell the delegate the connection is open, a warm connection opens before the delegate is set
+     */
+    private synchronized void notifyOpen() {
+        if (delegate != null && !this.openNotified){
+            this.openNotified = true;
             delegate.onOpen();
         }
     }
@@ -288,7 +945,8 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
             obj.put("continuous", true);
             obj.put("inactivity_timeout", this.sConfig.inactivityTimeout);
             obj.put("word_confidence", this.sConfig.wordConfidence);
-            obj.put("timestamps", this.sConfig.timestamps);
+            // word timings tell which audio is finalized and never needs to be replayed
+            obj.put("timestamps", this.sConfig.timestamps || this.replayBuffer != null);
             obj.put("profanity_filter", this.sConfig.profanityFilter);
             obj.put("max_alternatives", this.sConfig.maxAlternatives);
         } catch (JSONException e) {
@@ -296,7 +954,13 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
         }
         String startHeader = obj.toString();
         this.upload(startHeader);
-        this.encoder.onStart();
+        synchronized(this.encoderLock) {
+            this.encoder.onStart();
+        }
+        // the stream headers must never be dropped
+        if(this.coalescer != null)
+            this.coalescer.flush();
+        this.streamStarted = true;
         Log.d(TAG, "Sending init message: " + startHeader);
     }
 
@@ -306,6 +970,14 @@ public class WebSocketUploader extends WebSocketClient implements IChunkUploader
      * @param delegate
      */
     public void setDelegate(ISpeechDelegate delegate) {
+        Executor executor = this.sConfig.delegateExecutor;
+        if(delegate != null && executor != null) {
+            // one dispatcher per delegate keeps the events of consecutive utterances in order
+            DelegateDispatcher current = this.dispatcher;
+            if(current == null || current.getTarget() != delegate)
+                this.dispatcher = new DelegateDispatcher(delegate, executor);
+            delegate = this.dispatcher;
+        }
         this.delegate = delegate;
     }
 }
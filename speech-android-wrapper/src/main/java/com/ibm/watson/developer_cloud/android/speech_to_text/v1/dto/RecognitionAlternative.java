@@ -0,0 +1,85 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto;
+
+/**
+ * One hypothesis of a result. The words, their times and confidences are in parallel arrays.
+ */
+public class RecognitionAlternative {
+
+    private final String transcript;
+    private final double confidence;
+    private final String[] words;
+    private final double[] startTimes;
+    private final double[] endTimes;
+    private final double[] wordConfidences;
+
+    public RecognitionAlternative(String transcript, double confidence, String[] words, double[] startTimes, double[] endTimes, double[] wordConfidences) {
+        this.transcript = transcript;
+        this.confidence = confidence;
+        this.words = words;
+        this.startTimes = startTimes;
+        this.endTimes = endTimes;
+        this.wordConfidences = wordConfidences;
+    }
+
+    public String getTranscript() {
+        return transcript;
+    }
+
+    /**
+     * @return confidence of the transcript, NaN if the server did not send one (interim results)
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * @return words of the timestamps (or of the word confidences without timestamps), null without either
+     */
+    public String[] getWords() {
+        return words;
+    }
+
+    /**
+     * @return start (s) of each word, null if timestamps were not requested
+     */
+    public double[] getStartTimes() {
+        return startTimes;
+    }
+
+    /**
+     * @return end (s) of each word, null if timestamps were not requested
+     */
+    public double[] getEndTimes() {
+        return endTimes;
+    }
+
+    /**
+     * @return confidence of each word, null if word confidences were not requested or not sent (interim results)
+     */
+    public double[] getWordConfidences() {
+        return wordConfidences;
+    }
+
+    /**
+     * @return number of words with timestamps or confidences
+     */
+    public int getWordCount() {
+        return words != null ? words.length : 0;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto;
+
+/**
+ * One result of a results message: its index in the recognition, whether it is final, and its alternatives.
+ */
+public class RecognitionResult {
+
+    private final int index;
+    private final boolean isFinal;
+    private final RecognitionAlternative[] alternatives;
+
+    public RecognitionResult(int index, boolean isFinal, RecognitionAlternative[] alternatives) {
+        this.index = index;
+        this.isFinal = isFinal;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * @return result_index of the message plus the position of the result in it
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isFinal() {
+        return isFinal;
+    }
+
+    /**
+     * @return the alternatives, best first
+     */
+    public RecognitionAlternative[] getAlternatives() {
+        return alternatives;
+    }
+
+    /**
+     * @return the best alternative, null if there is none
+     */
+    public RecognitionAlternative getBest() {
+        return alternatives.length > 0 ? alternatives[0] : null;
+    }
+}
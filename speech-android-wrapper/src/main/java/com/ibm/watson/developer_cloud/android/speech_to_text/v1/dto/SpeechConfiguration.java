@@ -17,6 +17,8 @@
 
 package com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto;
 
+import java.util.concurrent.Executor;
+
 /**
  * Created by mihui on 9/2/15.
  */
@@ -32,6 +34,14 @@ public class SpeechConfiguration {
     public static final int FRAME_SIZE = 160;
     // Sample rate
     public static final int SAMPLE_RATE = 16000;
+    // Send queue overflow policies: block the audio producer until there is room
+    public static final int QUEUE_POLICY_BLOCK = 0;
+    // drop the oldest audio waiting in the queue
+    public static final int QUEUE_POLICY_DROP_OLDEST = 1;
+    // ask the encoder for a lower bitrate, drop the oldest audio if it cannot go lower
+    public static final int QUEUE_POLICY_REDUCE_BITRATE = 2;
+    // report an error and close the connection
+    public static final int QUEUE_POLICY_FAIL = 3;
     // Timeout
     public int inactivityTimeout = 600;
     // Data format
@@ -48,6 +58,35 @@ public class SpeechConfiguration {
     public boolean profanityFilter = true;
     // Maximum Alternatives
     public int maxAlternatives = 3;
+    // Maximum time (ms) audio may be held back to be merged into a larger message, 0 sends every chunk as is
+    public int coalescingDelay = 0;
+    // Merged message is sent as soon as it reaches this size (bytes)
+    public int coalescingThreshold = 16384;
+    // Maximum bytes waiting to be sent
+    public int sendQueueMaxBytes = 512 * 1024;
+    // Maximum time (ms) the oldest message may wait to be sent
+    public int sendQueueMaxDelay = 5000;
+    // What to do when the send queue is full, dropping the oldest audio never holds up the recorder
+    public int sendQueuePolicy = QUEUE_POLICY_DROP_OLDEST;
+    // Time (ms) a warm connection is kept idle before being replaced, must stay below the server's session timeout
+    public int warmConnectionTimeout = 25000;
+    // Keep the connection open across utterances, each recognize() sends a new start message
+    public boolean persistentSession = false;
+    // Time (ms) a persistent connection is kept open after its last utterance
+    public int sessionIdleTimeout = 20000;
+    // Replace a connection lost in the middle of an utterance and replay the audio the server has not finalized
+    public boolean autoReconnect = false;
+    // Number of connection attempts after a connection loss
+    public int reconnectMaxAttempts = 5;
+    // Delay (ms) before the first attempt, doubled after each failure
+    public int reconnectBaseDelay = 250;
+    // Raw audio kept for the replay, 30 seconds at 16 kHz
+    public int replayBufferMaxBytes = 30 * SAMPLE_RATE * 2;
+    // Serve the connection from the shared selector thread instead of dedicated read and write threads
+    public boolean selectorTransport = false;
+    // Runs the delegate callbacks in order on this executor, skipping the interim results a slow delegate
+    // has not received yet when a newer one arrives; null calls the delegate on the connection thread
+    public Executor delegateExecutor = null;
 
     /**
      * Instantiate default configuration
@@ -73,4 +112,34 @@ public class SpeechConfiguration {
         this.audioFormat = audioFormat;
         this.isAuthNeeded = isAuthNeeded;
     }
+
+    /**
+     * Copy a configuration, so that a session can be configured without affecting the others
+     *
+     * @param other
+     */
+    public SpeechConfiguration(SpeechConfiguration other){
+        this.inactivityTimeout = other.inactivityTimeout;
+        this.audioFormat = other.audioFormat;
+        this.isAuthNeeded = other.isAuthNeeded;
+        this.isSSL = other.isSSL;
+        this.wordConfidence = other.wordConfidence;
+        this.timestamps = other.timestamps;
+        this.profanityFilter = other.profanityFilter;
+        this.maxAlternatives = other.maxAlternatives;
+        this.coalescingDelay = other.coalescingDelay;
+        this.coalescingThreshold = other.coalescingThreshold;
+        this.sendQueueMaxBytes = other.sendQueueMaxBytes;
+        this.sendQueueMaxDelay = other.sendQueueMaxDelay;
+        this.sendQueuePolicy = other.sendQueuePolicy;
+        this.warmConnectionTimeout = other.warmConnectionTimeout;
+        this.persistentSession = other.persistentSession;
+        this.sessionIdleTimeout = other.sessionIdleTimeout;
+        this.autoReconnect = other.autoReconnect;
+        this.reconnectMaxAttempts = other.reconnectMaxAttempts;
+        this.reconnectBaseDelay = other.reconnectBaseDelay;
+        this.replayBufferMaxBytes = other.replayBufferMaxBytes;
+        this.selectorTransport = other.selectorTransport;
+        this.delegateExecutor = other.delegateExecutor;
+    }
 }
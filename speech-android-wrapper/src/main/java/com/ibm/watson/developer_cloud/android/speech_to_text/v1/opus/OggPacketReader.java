@@ -0,0 +1,160 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.opus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.OggCrc;
+
+/**
+ * Demultiplexes the packets of a single Ogg logical stream as it is read, the counterpart of OpusWriter.
+ * Pages are checked (capture pattern, CRC) and packets spanning several pages are reassembled.
+ * The page and packet buffers are reused, so memory does not grow with the length of the stream.
+ */
+public class OggPacketReader {
+
+    private static final int HEADER_SIZE = 27;
+    private static final int MAX_BODY_SIZE = 255 * 255;
+
+    private final InputStream in;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final byte[] lacing = new byte[255];
+    private final byte[] body = new byte[MAX_BODY_SIZE];
+    /** Segments of the current page, and the next one to read */
+    private int segmentCount = 0;
+    private int segment = 0;
+    private int bodyPosition = 0;
+    /** Packet being assembled */
+    private byte[] packet = new byte[4096];
+    private int packetLength = 0;
+    private long granulePosition = 0;
+    private int pageCount = 0;
+
+    public OggPacketReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next packet into getPacket()
+     * @return the length of the packet, -1 at the end of the stream
+     * @throws IOException if the stream is not a valid Ogg stream
+     */
+    public int readPacket() throws IOException {
+        while(true) {
+            if(this.segment == this.segmentCount) {
+                if(!this.readPage())
+                    return -1;
+                continue;
+            }
+            int lace = this.lacing[this.segment++] & 0xff;
+            this.append(this.bodyPosition, lace);
+            this.bodyPosition += lace;
+            // a lacing value under 255 ends the packet, 255 continues it in the next segment
+            if(lace < 255) {
+                int length = this.packetLength;
+                this.packetLength = 0;
+                return length;
+            }
+        }
+    }
+
+    /**
+     * @return buffer of the last packet read, valid until the next call to readPacket()
+     */
+    public byte[] getPacket() {
+        return this.packet;
+    }
+
+    /**
+     * @return granule position of the last page read
+     */
+    public long getGranulePosition() {
+        return this.granulePosition;
+    }
+
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    private void append(int offset, int length) {
+        if(this.packetLength + length > this.packet.length) {
+            byte[] larger = new byte[Math.max(this.packet.length * 2, this.packetLength + length)];
+            System.arraycopy(this.packet, 0, larger, 0, this.packetLength);
+            this.packet = larger;
+        }
+        System.arraycopy(this.body, offset, this.packet, this.packetLength, length);
+        this.packetLength += length;
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    private boolean readPage() throws IOException {
+        int read = this.readAtMost(this.header, 0, HEADER_SIZE);
+        if(read == 0)
+            return false;
+        if(read < HEADER_SIZE)
+            throw new EOFException("Truncated Ogg page " + this.pageCount);
+        if(this.header[0] != 'O' || this.header[1] != 'g' || this.header[2] != 'g' || this.header[3] != 'S' || this.header[4] != 0)
+            throw new IOException("Invalid Ogg page " + this.pageCount);
+        // a page which does not continue a packet drops what was left of the previous one
+        if((this.header[5] & 0x01) == 0)
+            this.packetLength = 0;
+        this.segmentCount = this.header[26] & 0xff;
+        this.readFully(this.lacing, this.segmentCount);
+        int bodySize = 0;
+        for(int i = 0; i < this.segmentCount; i++)
+            bodySize += this.lacing[i] & 0xff;
+        this.readFully(this.body, bodySize);
+
+        int crc = (this.header[22] & 0xff) | ((this.header[23] & 0xff) << 8) |
+                ((this.header[24] & 0xff) << 16) | ((this.header[25] & 0xff) << 24);
+        this.header[22] = this.header[23] = this.header[24] = this.header[25] = 0;
+        int computed = OggCrc.checksum(0, this.header, 0, HEADER_SIZE);
+        computed = OggCrc.checksum(computed, this.lacing, 0, this.segmentCount);
+        computed = OggCrc.checksum(computed, this.body, 0, bodySize);
+        if(computed != crc)
+            throw new IOException("Invalid CRC on Ogg page " + this.pageCount);
+
+        long granule = 0;
+        for(int i = 13; i >= 6; i--)
+            granule = (granule << 8) | (this.header[i] & 0xff);
+        this.granulePosition = granule;
+        this.segment = 0;
+        this.bodyPosition = 0;
+        this.pageCount++;
+        return true;
+    }
+
+    private int readAtMost(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while(total < length) {
+            int read = this.in.read(buffer, offset + total, length - total);
+            if(read == -1)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        if(this.readAtMost(buffer, 0, length) < length)
+            throw new EOFException("Truncated Ogg page " + this.pageCount);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.opus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Decodes an Ogg Opus stream as it is read, one packet at a time, into a reusable PCM buffer.
+ * Nothing is written to files, so several streams can be decoded at once.
+ */
+public class OpusStreamDecoder {
+
+    /** Longest duration (ms) of an Opus packet */
+    private static final int MAX_PACKET_DURATION = 120;
+
+    private final OggPacketReader reader;
+    private final int sampleRate;
+    private int channels = 0;
+    /** Samples per channel still to drop at the start of the stream */
+    private int preSkip = 0;
+    /** Samples per channel of the longest packet */
+    private int maxFrameSize = 0;
+    private PointerByReference decoder = null;
+    private ShortBuffer pcm = null;
+
+    /**
+     * @param in the Ogg Opus stream
+     * @param sampleRate rate of the decoded samples, 8000, 12000, 16000, 24000 or 48000
+     */
+    public OpusStreamDecoder(InputStream in, int sampleRate) {
+        this.reader = new OggPacketReader(in);
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Read the OpusHead and OpusTags packets and create the decoder
+     * @throws IOException if the stream is not a supported Ogg Opus stream
+     */
+    public void readHeader() throws IOException {
+        int length = this.reader.readPacket();
+        byte[] head = this.reader.getPacket();
+        if(length < 19 || !startsWith(head, "OpusHead"))
+            throw new IOException("Not an Ogg Opus stream");
+        this.channels = head[9] & 0xff;
+        // the pre-skip is counted at 48 kHz
+        this.preSkip = ((head[10] & 0xff) | ((head[11] & 0xff) << 8)) * this.sampleRate / 48000;
+        if(head[18] != 0 || this.channels < 1 || this.channels > 2)
+            throw new IOException("Unsupported Opus channel mapping, " + this.channels + " channels");
+        length = this.reader.readPacket();
+        if(length < 8 || !startsWith(this.reader.getPacket(), "OpusTags"))
+            throw new IOException("Missing OpusTags packet");
+
+        IntBuffer error = IntBuffer.allocate(1);
+        this.decoder = JNAOpus.INSTANCE.opus_decoder_create(this.sampleRate, this.channels, error);
+        if(error.get(0) != JNAOpus.OPUS_OK)
+            throw new IOException("Cannot create the Opus decoder: " + error.get(0));
+        this.maxFrameSize = this.sampleRate * MAX_PACKET_DURATION / 1000;
+        this.pcm = ShortBuffer.allocate(this.maxFrameSize * this.channels);
+    }
+
+    /**
+     * Decode the next packet into getPcm()
+     * @return number of samples (of all channels, interleaved) at the start of getPcm(), -1 at the end of the stream
+     * @throws IOException
+     */
+    public int decode() throws IOException {
+        while(true) {
+            int length = this.reader.readPacket();
+            if(length == -1)
+                return -1;
+            this.pcm.clear();
+            int samples = JNAOpus.INSTANCE.opus_decode(this.decoder, this.reader.getPacket(), length, this.pcm, this.maxFrameSize, 0);
+            if(samples < 0)
+                throw new IOException("Opus decoding failed: " + samples);
+            int count = samples * this.channels;
+            if(this.preSkip > 0) {
+                int skip = Math.min(this.preSkip, samples);
+                this.preSkip -= skip;
+                count -= skip * this.channels;
+                System.arraycopy(this.pcm.array(), skip * this.channels, this.pcm.array(), 0, count);
+            }
+            if(count > 0)
+                return count;
+        }
+    }
+
+    /**
+     * @return buffer of the last decoded samples, valid until the next call to decode()
+     */
+    public short[] getPcm() {
+        return this.pcm.array();
+    }
+
+    public int getChannels() {
+        return this.channels;
+    }
+
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Release the native decoder
+     */
+    public void close() {
+        if(this.decoder != null) {
+            JNAOpus.INSTANCE.opus_decoder_destroy(this.decoder);
+            this.decoder = null;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, String tag) {
+        for(int i = 0; i < tag.length(); i++) {
+            if(data[i] != tag.charAt(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -103,8 +103,8 @@ public class OpusWriter extends AudioFileWriter {
         this.write(data);
 
         /* Writes the OGG comment page */
-        header = buildOggPageHeader(0, 0, streamSerialNumber, pageCount++, 1, new byte[]{(byte) (comment.length() + 8)});
         data = buildOpusComment(comment);
+        header = buildOggPageHeader(0, 0, streamSerialNumber, pageCount++, 1, new byte[]{(byte) data.length});
         chkSum = OggCrc.checksum(0, header, 0, header.length);
         chkSum = OggCrc.checksum(chkSum, data, 0, data.length);
         writeInt(header, 22, chkSum);
@@ -0,0 +1,306 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+
+/**
+ * AudioTrack kept from one utterance to the next, so that playback starts without setting up a new
+ * track. The track is created again only when the sample rate or the channels change, and released
+ * once it has been idle for a while.
+ *
+ * Each playback is a session, started with start(): starting a session stops the audio of the
+ * previous one, whose writes then fail, so that a new synthesis takes over the player.
+ * Underruns are estimated from the playback head, as the track does not report them before API 24.
+ */
+public class AudioPlayer {
+    protected static final String TAG = "AudioPlayer";
+    /** Time (s) after which an idle track is released */
+    public static final int IDLE_RELEASE_DELAY = 30;
+    /** Longest time (ms) to wait for the end of the audio in drain() */
+    private static final long MAX_DRAIN_TIME = 5000;
+
+    private static final AudioPlayer sharedInstance = new AudioPlayer();
+
+    private AudioTrack track = null;
+    private int sampleRate = 0;
+    private int channels = 0;
+    private int bufferFrames = 0;
+    /** Frames written to the track since it was created or flushed, on the scale of its playback head */
+    private int framesWritten = 0;
+    /** Whether the current session has written audio not played yet, to detect underruns */
+    private boolean writing = false;
+    private int session = 0;
+    private ScheduledFuture<?> idleRelease = null;
+
+    private final AtomicLong tracksCreated = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+
+    public static AudioPlayer sharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * Start a session, the audio of the previous session is stopped
+     * @return the session, to pass to the other methods
+     */
+    public synchronized int start() {
+        this.flush();
+        this.cancelIdleRelease();
+        return ++this.session;
+    }
+
+    /**
+     * Set the format of the next audio of a session: the track is kept if it has the same format, so
+     * that consecutive audio plays without a gap, or created again once the audio written is played
+     * @param session
+     * @param sampleRate
+     * @param channels 1 or 2
+     * @return false if the session was stopped
+     * @throws InterruptedException
+     */
+    public boolean configure(int session, int sampleRate, int channels) throws InterruptedException {
+        synchronized(this) {
+            if(session != this.session)
+                return false;
+            if(this.track != null && this.sampleRate == sampleRate && this.channels == channels) {
+                if(this.track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                    // a writer of the previous session may have written a last chunk after it was stopped
+                    this.track.flush();
+                    this.framesWritten = this.track.getPlaybackHeadPosition();
+                    this.track.play();
+                }
+                return true;
+            }
+        }
+        this.drain(session);
+        synchronized(this) {
+            if(session != this.session)
+                return false;
+            this.release();
+            int channelConfig = channels == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+            // IMPORTANT: minimum required buffer size for the successful creation of an AudioTrack instance in streaming mode.
+            int bufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+            this.track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelConfig,
+                    AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+            if(this.track.getState() == AudioTrack.STATE_UNINITIALIZED) {
+                Log.e(TAG, "Cannot create an AudioTrack at " + sampleRate + " Hz, " + channels + " channels");
+                this.release();
+                return false;
+            }
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.bufferFrames = bufferSize / (2 * channels);
+            this.framesWritten = 0;
+            this.tracksCreated.incrementAndGet();
+            this.track.play();
+            return true;
+        }
+    }
+
+    /**
+     * Write 16 bits samples, blocks while the buffer of the track is full
+     * @param session
+     * @param data
+     * @param offset
+     * @param length in bytes
+     * @return the bytes written, -1 if the session was stopped
+     */
+    public int write(int session, byte[] data, int offset, int length) {
+        AudioTrack track = this.beforeWrite(session);
+        if(track == null)
+            return -1;
+        int written = track.write(data, offset, length);
+        this.afterWrite(session, track, written / 2);
+        return written;
+    }
+
+    /**
+     * Write samples, blocks while the buffer of the track is full
+     * @param session
+     * @param data
+     * @param offset
+     * @param length in samples
+     * @return the samples written, -1 if the session was stopped
+     */
+    public int write(int session, short[] data, int offset, int length) {
+        AudioTrack track = this.beforeWrite(session);
+        if(track == null)
+            return -1;
+        int written = track.write(data, offset, length);
+        this.afterWrite(session, track, written);
+        return written;
+    }
+
+    /**
+     * @return the track to write to, null if the session was stopped
+     */
+    private synchronized AudioTrack beforeWrite(int session) {
+        if(session != this.session || this.track == null || this.track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING)
+            return null;
+        // the buffer ran empty since the last write: the audio stopped for a moment
+        if(this.writing && this.pendingFrames() <= 0)
+            this.underruns.incrementAndGet();
+        return this.track;
+    }
+
+    /**
+     * The write happens without the lock, so that stop() is not blocked by a full buffer.
+     * The track may have been released or created again meanwhile, its samples are then not counted.
+     */
+    private synchronized void afterWrite(int session, AudioTrack track, int samples) {
+        if(session != this.session || track != this.track || this.channels == 0 || samples <= 0)
+            return;
+        this.framesWritten += samples / this.channels;
+        this.writing = true;
+    }
+
+    private int pendingFrames() {
+        return this.framesWritten - this.track.getPlaybackHeadPosition();
+    }
+
+    /**
+     * Wait until the audio of a session is played, then pause the track until the next session
+     * @param session
+     * @throws InterruptedException
+     */
+    public void drain(int session) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + MAX_DRAIN_TIME;
+        while(true) {
+            synchronized(this) {
+                if(session != this.session || this.track == null)
+                    return;
+                if(this.track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING || this.pendingFrames() <= 0
+                        || System.currentTimeMillis() >= deadline) {
+                    this.writing = false;
+                    this.idle();
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stop the audio of a session at once
+     * @param session
+     */
+    public synchronized void stop(int session) {
+        if(session != this.session)
+            return;
+        this.flush();
+        this.session++;
+    }
+
+    /**
+     * Release the track now, instead of after the idle delay
+     */
+    public synchronized void release() {
+        this.cancelIdleRelease();
+        if(this.track != null) {
+            this.track.release();
+            this.track = null;
+        }
+        this.sampleRate = 0;
+        this.channels = 0;
+        this.writing = false;
+    }
+
+    /**
+     * Drop the audio not played yet, and keep the track paused
+     */
+    private void flush() {
+        if(this.track == null)
+            return;
+        // IMPORTANT: NOT use stop()
+        // For an immediate stop, use pause(), followed by flush() to discard audio data that hasn't been played back yet.
+        this.track.pause();
+        this.track.flush();
+        this.framesWritten = this.track.getPlaybackHeadPosition();
+        this.writing = false;
+        this.idle();
+    }
+
+    private void idle() {
+        this.track.pause();
+        this.cancelIdleRelease();
+        this.idleRelease = SharedExecutors.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(AudioPlayer.this) {
+                    if(idleRelease != null && track != null && track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                        Log.d(TAG, "Releasing the idle AudioTrack");
+                        idleRelease = null;
+                        release();
+                    }
+                }
+            }
+        }, IDLE_RELEASE_DELAY, TimeUnit.SECONDS);
+    }
+
+    private void cancelIdleRelease() {
+        if(this.idleRelease != null) {
+            this.idleRelease.cancel(false);
+            this.idleRelease = null;
+        }
+    }
+
+    /**
+     * @return estimated number of times the buffer ran empty while audio was written
+     */
+    public long getUnderrunCount() {
+        return this.underruns.get();
+    }
+
+    /**
+     * @return number of AudioTracks created, one per change of format or after an idle release
+     */
+    public long getTracksCreated() {
+        return this.tracksCreated.get();
+    }
+
+    /**
+     * @return latency (ms) added by the buffer of the track when it is full, 0 without a track
+     */
+    public synchronized long getBufferLatency() {
+        return this.sampleRate == 0 ? 0 : this.bufferFrames * 1000L / this.sampleRate;
+    }
+
+    /**
+     * @return duration (ms) of the audio written and not played yet
+     */
+    public synchronized long getPendingDuration() {
+        if(this.track == null || this.sampleRate == 0)
+            return 0;
+        return Math.max(0, this.pendingFrames()) * 1000L / this.sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        return "tracks created: " + this.tracksCreated.get() + ", underruns: " + this.underruns.get() +
+                ", buffer latency: " + this.getBufferLatency() + " ms";
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.opus.OpusStreamDecoder;
+
+/**
+ * Decoded synthesis, ready to be written to an AudioTrack: 16 bits little endian samples, interleaved.
+ * Decoding stops with an InterruptedIOException when its thread is interrupted, e.g. by a cancellation.
+ */
+public class PcmAudio {
+
+    private final int sampleRate;
+    private final int channels;
+    private final byte[] samples;
+
+    public PcmAudio(int sampleRate, int channels, byte[] samples) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.samples = samples;
+    }
+
+    /**
+     * @param in a response of the synthesis
+     * @param codec TTSUtility.CODEC_WAV or TTSUtility.CODEC_OPUS
+     * @return the decoded audio
+     * @throws IOException
+     */
+    public static PcmAudio decode(InputStream in, String codec) throws IOException {
+        if(codec == TTSUtility.CODEC_OPUS)
+            return decodeOpus(in);
+        return decodeWav(in);
+    }
+
+    private static PcmAudio decodeWav(InputStream in) throws IOException {
+        WavStreamReader wav = new WavStreamReader(in);
+        wav.readHeader();
+        if(wav.getBitsPerSample() != 16)
+            throw new IOException("Unsupported WAV format: " + wav.getBitsPerSample() + " bits");
+        ByteArrayOutputStream samples = new ByteArrayOutputStream();
+        byte[] chunk = new byte[TTSUtility.STREAM_CHUNK_SIZE];
+        int read;
+        while((read = wav.read(chunk, 0, chunk.length)) != -1) {
+            checkInterrupted();
+            samples.write(chunk, 0, read);
+        }
+        return new PcmAudio(wav.getSampleRate(), wav.getChannels(), samples.toByteArray());
+    }
+
+    private static PcmAudio decodeOpus(InputStream in) throws IOException {
+        OpusStreamDecoder decoder = new OpusStreamDecoder(in, TTSUtility.CODEC_OPUS_SAMPLE_RATE);
+        try {
+            decoder.readHeader();
+            ByteArrayOutputStream samples = new ByteArrayOutputStream();
+            byte[] chunk = new byte[0];
+            int count;
+            while((count = decoder.decode()) != -1) {
+                checkInterrupted();
+                if(chunk.length < count * 2)
+                    chunk = new byte[count * 2];
+                short[] pcm = decoder.getPcm();
+                for(int i = 0; i < count; i++) {
+                    chunk[2 * i] = (byte) pcm[i];
+                    chunk[2 * i + 1] = (byte) (pcm[i] >> 8);
+                }
+                samples.write(chunk, 0, count * 2);
+            }
+            return new PcmAudio(decoder.getSampleRate(), decoder.getChannels(), samples.toByteArray());
+        } finally {
+            decoder.close();
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if(Thread.interrupted())
+            throw new InterruptedIOException("Decoding interrupted");
+    }
+
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    public int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * @return the samples, 16 bits little endian, interleaved
+     */
+    public byte[] getSamples() {
+        return this.samples;
+    }
+
+    /**
+     * @return duration (ms) of the audio
+     */
+    public long getDuration() {
+        return this.samples.length / (2L * this.channels) * 1000 / this.sampleRate;
+    }
+}
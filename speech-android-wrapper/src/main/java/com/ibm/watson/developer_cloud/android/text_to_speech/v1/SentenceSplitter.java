@@ -0,0 +1,86 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits a text into segments synthesized one after the other: its sentences, and the clauses of
+ * the sentences too long to be synthesized quickly.
+ */
+public class SentenceSplitter {
+
+    /** Default length (characters) beyond which a sentence is split into clauses */
+    public static final int MAX_SEGMENT_LENGTH = 200;
+
+    private SentenceSplitter() {}
+
+    /**
+     * @param voice name of a voice, e.g. en-US_MichaelVoice
+     * @return the locale of the voice, the default locale if the name does not start with one
+     */
+    public static Locale localeOf(String voice) {
+        if(voice == null || voice.length() < 5 || voice.charAt(2) != '-')
+            return Locale.getDefault();
+        return new Locale(voice.substring(0, 2), voice.substring(3, 5));
+    }
+
+    /**
+     * @param text
+     * @param locale language of the text, for the sentence boundaries
+     * @param maxLength length (characters) beyond which a sentence is split
+     * @return the segments of the text, without the blanks around them
+     */
+    public static List<String> split(String text, Locale locale, int maxLength) {
+        List<String> segments = new ArrayList<String>();
+        BreakIterator sentences = BreakIterator.getSentenceInstance(locale);
+        sentences.setText(text);
+        int start = sentences.first();
+        for(int end = sentences.next(); end != BreakIterator.DONE; start = end, end = sentences.next())
+            addSentence(segments, text.substring(start, end).trim(), maxLength);
+        return segments;
+    }
+
+    private static void addSentence(List<String> segments, String sentence, int maxLength) {
+        while(sentence.length() > maxLength) {
+            int cut = clauseEnd(sentence, maxLength);
+            segments.add(sentence.substring(0, cut).trim());
+            sentence = sentence.substring(cut).trim();
+        }
+        if(sentence.length() > 0)
+            segments.add(sentence);
+    }
+
+    /**
+     * @return where to cut a long sentence: after its last clause punctuation in the second half of
+     * the maximum length, or else after its last blank, or else at the maximum length
+     */
+    private static int clauseEnd(String sentence, int maxLength) {
+        int blank = -1;
+        for(int i = maxLength - 1; i > 0; i--) {
+            char c = sentence.charAt(i);
+            if(i >= maxLength / 2 && (c == ',' || c == ';' || c == ':'))
+                return i + 1;
+            if(blank == -1 && Character.isWhitespace(c))
+                blank = i;
+        }
+        return blank > 0 ? blank : maxLength;
+    }
+}
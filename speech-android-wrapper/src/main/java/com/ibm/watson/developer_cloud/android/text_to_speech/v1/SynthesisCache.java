@@ -0,0 +1,419 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * Cache of synthesized audio, so that repeated prompts play without the network.
+ * Responses are keyed by a hash of the voice, the text, the codec and the sample rate, and kept in a
+ * least recently used memory tier bounded in bytes and, once a directory is set, in a disk tier
+ * bounded in bytes where the least recently used files are removed first.
+ */
+public class SynthesisCache {
+    private static final String TAG = SynthesisCache.class.getName();
+    public static final long DEFAULT_MEMORY_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_DISK_SIZE = 32 * 1024 * 1024;
+    /** Largest response (bytes) which is cached */
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+    private static final String SUFFIX = ".tts";
+
+    private static final SynthesisCache sharedInstance = new SynthesisCache();
+
+    /** Responses by key, least recently used first */
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private volatile long maxMemoryBytes = DEFAULT_MEMORY_SIZE;
+    private volatile int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+    private final Object diskLock = new Object();
+    private File directory = null;
+    private long maxDiskBytes = DEFAULT_DISK_SIZE;
+    /** Bytes of the files of the directory, -1 until they are counted */
+    private long diskBytes = -1;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static SynthesisCache sharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * @return key of a synthesis
+     */
+    public static String key(String voice, String text, String codec, int sampleRate) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((voice + '\n' + codec + '\n' + sampleRate + '\n').getBytes("UTF-8"));
+            byte[] hash = digest.digest(text.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for(byte b : hash)
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return key.toString();
+        } catch(NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param maxBytes size of the memory tier, 0 disables it
+     */
+    public synchronized void setMaxMemorySize(long maxBytes) {
+        this.maxMemoryBytes = maxBytes;
+        this.trimMemory();
+    }
+
+    public void setMaxEntrySize(int maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public int getMaxEntrySize() {
+        return this.maxEntrySize;
+    }
+
+    /**
+     * @param directory where responses are persisted, null to disable the disk tier
+     * @param maxBytes size of the disk tier
+     */
+    public void setDirectory(File directory, long maxBytes) {
+        synchronized(this.diskLock) {
+            if(directory != null && !directory.isDirectory() && !directory.mkdirs())
+                Log.w(TAG, "Cannot create " + directory);
+            this.directory = directory;
+            this.maxDiskBytes = maxBytes;
+            this.diskBytes = -1;
+            this.trimDisk();
+        }
+    }
+
+    /**
+     * Open a cached response
+     * @param key
+     * @return the response, null if it is not cached
+     */
+    public InputStream open(String key) {
+        byte[] data;
+        synchronized(this) {
+            data = this.memory.get(key);
+        }
+        if(data != null) {
+            this.memoryHits.incrementAndGet();
+            return new ByteArrayInputStream(data);
+        }
+        data = this.readFile(key);
+        if(data != null) {
+            this.diskHits.incrementAndGet();
+            this.putMemory(key, data);
+            return new ByteArrayInputStream(data);
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache a complete response
+     * @param key
+     * @param data
+     */
+    public void put(String key, byte[] data) {
+        if(data.length > this.maxEntrySize)
+            return;
+        this.putMemory(key, data);
+        this.writeFile(key, data);
+    }
+
+    /**
+     * Record a response while it is read, to put it in the cache once it is complete
+     * @param in
+     * @return the recording stream
+     */
+    public Recorder record(InputStream in) {
+        return new Recorder(in, this.maxEntrySize);
+    }
+
+    private synchronized void putMemory(String key, byte[] data) {
+        if(data.length > this.maxMemoryBytes)
+            return;
+        byte[] previous = this.memory.put(key, data);
+        if(previous != null)
+            this.memoryBytes -= previous.length;
+        this.memoryBytes += data.length;
+        this.trimMemory();
+    }
+
+    private void trimMemory() {
+        Iterator<Map.Entry<String, byte[]>> entries = this.memory.entrySet().iterator();
+        while(this.memoryBytes > this.maxMemoryBytes && entries.hasNext()) {
+            this.memoryBytes -= entries.next().getValue().length;
+            entries.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private byte[] readFile(String key) {
+        File file;
+        synchronized(this.diskLock) {
+            if(this.directory == null)
+                return null;
+            file = new File(this.directory, key + SUFFIX);
+            if(!file.isFile())
+                return null;
+            // the modification time orders the files for eviction
+            file.setLastModified(System.currentTimeMillis());
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while(read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if(count == -1)
+                    throw new IOException("Truncated " + file);
+                read += count;
+            }
+            return data;
+        } catch(IOException e) {
+            Log.w(TAG, "Cannot read " + file + ": " + e.getMessage());
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Write to a temporary file renamed to the entry, so that a reader never sees half a response
+     */
+    private void writeFile(String key, byte[] data) {
+        File directory;
+        synchronized(this.diskLock) {
+            directory = this.directory;
+            if(directory == null || data.length > this.maxDiskBytes)
+                return;
+        }
+        File file = new File(directory, key + SUFFIX);
+        File temp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.close();
+            out = null;
+            synchronized(this.diskLock) {
+                long previous = file.length();
+                if(!temp.renameTo(file))
+                    throw new IOException("Cannot rename " + temp);
+                if(this.diskBytes >= 0)
+                    this.diskBytes += data.length - previous;
+                this.trimDisk();
+            }
+        } catch(IOException e) {
+            Log.w(TAG, "Cannot write " + file + ": " + e.getMessage());
+        } finally {
+            close(out);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Remove the least recently used files until the disk tier fits its size
+     */
+    private void trimDisk() {
+        if(this.directory == null)
+            return;
+        File[] files = this.directory.listFiles();
+        if(files == null)
+            return;
+        if(this.diskBytes < 0) {
+            this.diskBytes = 0;
+            for(File file : files) {
+                if(file.getName().endsWith(SUFFIX))
+                    this.diskBytes += file.length();
+            }
+        }
+        if(this.diskBytes <= this.maxDiskBytes)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for(File file : files) {
+            if(this.diskBytes <= this.maxDiskBytes)
+                break;
+            if(!file.getName().endsWith(SUFFIX))
+                continue;
+            long length = file.length();
+            if(file.delete()) {
+                this.diskBytes -= length;
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Forget every response, in memory and on disk
+     */
+    public void clear() {
+        synchronized(this) {
+            this.memory.clear();
+            this.memoryBytes = 0;
+        }
+        synchronized(this.diskLock) {
+            File[] files = this.directory != null ? this.directory.listFiles() : null;
+            if(files != null) {
+                for(File file : files) {
+                    if(file.getName().endsWith(SUFFIX))
+                        file.delete();
+                }
+            }
+            this.diskBytes = 0;
+        }
+    }
+
+    private static void close(java.io.Closeable closeable) {
+        if(closeable != null) {
+            try {
+                closeable.close();
+            } catch(IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    public long getMemoryHits() {
+        return this.memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return this.diskHits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return entries removed from either tier to make room
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public synchronized long getMemorySize() {
+        return this.memoryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "memory hits: " + this.memoryHits.get() + ", disk hits: " + this.diskHits.get() +
+                ", misses: " + this.misses.get() + ", evictions: " + this.evictions.get();
+    }
+
+    /**
+     * Copies the bytes read from a response, up to a size
+     */
+    public static class Recorder extends FilterInputStream {
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private final int maxSize;
+        private boolean overflow = false;
+        private boolean complete = false;
+
+        Recorder(InputStream in, int maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b == -1)
+                this.complete = true;
+            else
+                this.record(new byte[] {(byte) b}, 0, 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if(read == -1)
+                this.complete = true;
+            else
+                this.record(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // skipped bytes are part of the response too
+            byte[] buffer = new byte[(int) Math.min(count, 4096)];
+            int read = this.read(buffer, 0, buffer.length);
+            return read == -1 ? 0 : read;
+        }
+
+        private void record(byte[] buffer, int offset, int length) {
+            if(this.overflow)
+                return;
+            if(this.copy.size() + length > this.maxSize) {
+                this.overflow = true;
+                this.copy.reset();
+                return;
+            }
+            this.copy.write(buffer, offset, length);
+        }
+
+        /**
+         * Read the rest of the response, as long as it can still be cached
+         * @throws IOException
+         */
+        public void drain() throws IOException {
+            byte[] buffer = new byte[4096];
+            while(!this.overflow && this.read(buffer, 0, buffer.length) != -1);
+        }
+
+        /**
+         * @return the whole response, null if it was not read to its end or is too large
+         */
+        public byte[] getResponse() {
+            return this.complete && !this.overflow ? this.copy.toByteArray() : null;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.client.methods.HttpGet;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SpeechFuture;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.TokenProvider;
+
+/**
+ * Utterances played one after the other by a single player thread.
+ * While an utterance plays, the next ones are synthesized and decoded in the background, up to the
+ * prefetch depth, so that only a few decoded utterances are held in memory. Cancelling an utterance
+ * aborts its request and its decoding, or stops it if it is playing.
+ */
+public class SynthesisQueue {
+    protected static final String TAG = "SynthesisQueue";
+    /** Default number of queued utterances synthesized ahead */
+    public static final int DEFAULT_PREFETCH = TTSUtility.PIPELINE_DEPTH;
+
+    /**
+     * An utterance of the queue
+     */
+    public class Utterance {
+        private final String text;
+        private final String voice;
+        private final String codec;
+        /** Synthesis and decoding, null until they start */
+        private SpeechFuture<PcmAudio> audio = null;
+        private boolean fetching = false;
+        private volatile boolean cancelled = false;
+
+        private Utterance(String text, String voice, String codec) {
+            this.text = text;
+            this.voice = voice;
+            this.codec = codec;
+        }
+
+        public String getText() {
+            return this.text;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * Remove the utterance from the queue, or stop it if it is playing
+         */
+        public void cancel() {
+            SynthesisQueue.this.cancel(this);
+        }
+    }
+
+    private final String server;
+    private final String username;
+    private final String password;
+    private final TokenProvider tokenProvider;
+    private volatile String voice = null;
+    private volatile String codec = TTSUtility.CODEC_WAV;
+    private volatile int prefetch = DEFAULT_PREFETCH;
+    private volatile TTSPlayCompletionListener playCompletionListener = null;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final LinkedList<Utterance> queue = new LinkedList<Utterance>();
+    /** Utterance taken by the player, null when it is idle */
+    private Utterance current = null;
+    private Thread player = null;
+
+    /**
+     * @param server URL of the synthesize endpoint
+     * @param username
+     * @param password
+     * @param tokenProvider used instead of the credentials if not null
+     */
+    public SynthesisQueue(String server, String username, String password, TokenProvider tokenProvider) {
+        this.server = server;
+        this.username = username;
+        this.password = password;
+        this.tokenProvider = tokenProvider;
+    }
+
+    /**
+     * Set the voice of the next utterances
+     * @param voice
+     */
+    public void setVoice(String voice) {
+        this.voice = voice;
+    }
+
+    /**
+     * Set the codec of the next utterances
+     * @param codec TTSUtility.CODEC_WAV or TTSUtility.CODEC_OPUS
+     */
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @param prefetch number of queued utterances synthesized and decoded ahead
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+        this.prefetch();
+    }
+
+    /**
+     * @param listener called on the main thread once each utterance has been played
+     */
+    public void setPlayCompletionListener(TTSPlayCompletionListener listener) {
+        this.playCompletionListener = listener;
+    }
+
+    /**
+     * Add an utterance at the end of the queue
+     * @param text
+     * @return the utterance, to cancel it
+     */
+    public Utterance enqueue(String text) {
+        return this.insert(text, false);
+    }
+
+    /**
+     * Add an utterance at the head of the queue, to be played right after the current one
+     * @param text
+     * @return the utterance, to cancel it
+     */
+    public Utterance enqueueNext(String text) {
+        return this.insert(text, true);
+    }
+
+    private Utterance insert(String text, boolean first) {
+        Utterance utterance = new Utterance(text, this.voice, this.codec);
+        synchronized(this) {
+            if(first)
+                this.queue.addFirst(utterance);
+            else
+                this.queue.addLast(utterance);
+            if(this.player == null) {
+                this.player = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        play();
+                    }
+                }, "TTSQueueThread");
+                this.player.setDaemon(true);
+                this.player.start();
+            }
+        }
+        this.prefetch();
+        return utterance;
+    }
+
+    /**
+     * Cancel an utterance: remove it from the queue, or stop it if it is playing
+     * @param utterance
+     */
+    public void cancel(Utterance utterance) {
+        synchronized(this) {
+            this.cancelLocked(utterance);
+            this.queue.remove(utterance);
+            this.notifyAll();
+        }
+        // another utterance enters the prefetch window
+        this.prefetch();
+    }
+
+    /**
+     * Cancel the queued utterances, the current one keeps playing
+     */
+    public void clear() {
+        synchronized(this) {
+            for(Utterance utterance : this.queue)
+                this.cancelLocked(utterance);
+            this.queue.clear();
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Cancel the queued utterances and stop the current one
+     */
+    public void stop() {
+        synchronized(this) {
+            if(this.current != null)
+                this.cancelLocked(this.current);
+        }
+        this.clear();
+    }
+
+    /**
+     * @return number of utterances waiting, without the one playing
+     */
+    public synchronized int size() {
+        return this.queue.size();
+    }
+
+    private void cancelLocked(Utterance utterance) {
+        utterance.cancelled = true;
+        if(utterance.audio != null) {
+            utterance.audio.cancel(true);
+            utterance.audio = null;
+        }
+    }
+
+    /**
+     * @return whether the utterance is the current one or one of the next ones to synthesize ahead
+     */
+    private boolean inWindow(Utterance utterance) {
+        if(utterance == this.current)
+            return true;
+        int index = this.queue.indexOf(utterance);
+        return index >= 0 && index < this.prefetch;
+    }
+
+    /**
+     * Start the synthesis of the current utterance and of the next ones up to the prefetch depth, and
+     * drop the synthesis of those pushed out of it by an insertion at the head, to bound the memory
+     */
+    private void prefetch() {
+        List<Utterance> starting = new ArrayList<Utterance>();
+        synchronized(this) {
+            if(this.current != null && !this.current.cancelled && this.current.audio == null && !this.current.fetching)
+                starting.add(this.current);
+            int index = 0;
+            for(Utterance utterance : this.queue) {
+                if(index++ < this.prefetch) {
+                    if(utterance.audio == null && !utterance.fetching)
+                        starting.add(utterance);
+                } else if(utterance.audio != null) {
+                    utterance.audio.cancel(true);
+                    utterance.audio = null;
+                }
+            }
+            for(Utterance utterance : starting)
+                utterance.fetching = true;
+        }
+        // the futures are created without the lock, which their callbacks may need
+        for(Utterance utterance : starting) {
+            SpeechFuture<PcmAudio> audio = null;
+            try {
+                audio = this.fetch(utterance);
+            } catch(RuntimeException e) {
+                Log.e(TAG, "Cannot request the synthesis: " + e.getMessage());
+            }
+            synchronized(this) {
+                utterance.fetching = false;
+                if(audio == null)
+                    utterance.cancelled = true;
+                else if(utterance.cancelled || !this.inWindow(utterance))
+                    audio.cancel(true);
+                else
+                    utterance.audio = audio;
+                this.notifyAll();
+            }
+        }
+    }
+
+    private SpeechFuture<PcmAudio> fetch(final Utterance utterance) {
+        final HttpGet request = TTSUtility.createRequest(this.server, utterance.text, utterance.voice, utterance.codec);
+        final String key = SynthesisCache.key(utterance.voice, utterance.text, utterance.codec,
+                TTSUtility.requestedSampleRate(utterance.codec));
+        return SpeechFuture.submit(new Callable<PcmAudio>() {
+            @Override
+            public PcmAudio call() throws Exception {
+                // the token may be a network request: it is asked on the worker, not on the caller of enqueue()
+                String token = tokenProvider == null ? null : tokenProvider.getToken();
+                TTSUtility.authenticate(request, username, password, token);
+                byte[] response = TTSUtility.download(request, key);
+                return PcmAudio.decode(new ByteArrayInputStream(response), utterance.codec);
+            }
+        }, request);
+    }
+
+    /**
+     * Body of the player thread, until the queue is empty
+     */
+    private void play() {
+        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioPlayer audioPlayer = AudioPlayer.sharedInstance();
+        int session = 0;
+        // false until the queue starts a session, and once the session is stopped
+        boolean playing = false;
+        Utterance utterance = null;
+        try {
+            while(true) {
+                synchronized(this) {
+                    // the player is done with the previous utterance: the handle kept by the app
+                    // must not keep its decoded audio reachable
+                    if(utterance != null)
+                        utterance.audio = null;
+                    utterance = this.queue.poll();
+                    this.current = utterance;
+                }
+                if(utterance == null) {
+                    if(playing)
+                        audioPlayer.drain(session);
+                    synchronized(this) {
+                        if(this.queue.isEmpty()) {
+                            this.player = null;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                this.prefetch();
+
+                PcmAudio audio;
+                try {
+                    SpeechFuture<PcmAudio> future;
+                    synchronized(this) {
+                        while(utterance.audio == null && !utterance.cancelled)
+                            this.wait();
+                        future = utterance.audio;
+                    }
+                    if(future == null)
+                        continue;
+                    audio = future.get();
+                } catch(CancellationException e) {
+                    continue;
+                } catch(ExecutionException e) {
+                    Log.e(TAG, "Synthesis failed: " + e.getCause());
+                    continue;
+                }
+
+                // consecutive utterances share the session, so that they play without a gap
+                if(!playing) {
+                    session = audioPlayer.start();
+                    playing = true;
+                }
+                boolean played = audioPlayer.configure(session, audio.getSampleRate(), audio.getChannels());
+                byte[] samples = audio.getSamples();
+                for(int offset = 0; played && offset < samples.length; offset += TTSUtility.STREAM_CHUNK_SIZE) {
+                    if(utterance.cancelled) {
+                        // drop what is left in the buffer of the track, and go on with the next utterance
+                        audioPlayer.stop(session);
+                        played = false;
+                    }
+                    else if(audioPlayer.write(session, samples, offset, Math.min(TTSUtility.STREAM_CHUNK_SIZE, samples.length - offset)) < 0)
+                        played = false;
+                }
+                if(played)
+                    this.notifyCompletion(utterance);
+                else
+                    // stopped, possibly by a synthesis outside of the queue
+                    playing = false;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized(this) {
+                if(utterance != null)
+                    utterance.audio = null;
+                // a new player thread may already have taken the next utterance
+                if(this.current == utterance)
+                    this.current = null;
+                if(this.player == Thread.currentThread())
+                    this.player = null;
+            }
+        }
+    }
+
+    private void notifyCompletion(final Utterance utterance) {
+        final TTSPlayCompletionListener listener = this.playCompletionListener;
+        if(listener == null)
+            return;
+        this.handler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onPlayCompleted(utterance.text);
+            }
+        });
+    }
+}
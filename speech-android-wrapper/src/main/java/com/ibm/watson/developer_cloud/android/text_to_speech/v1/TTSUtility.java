@@ -17,38 +17,32 @@
 package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
 
 import android.app.Application;
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioTrack;
 import android.os.Environment;
 import android.os.Handler;
 import android.util.Log;
 
-import com.ibm.watson.developer_cloud.android.speech_to_text.v1.opus.OggOpus;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedHttpClient;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SpeechFuture;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.opus.OpusStreamDecoder;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 
 import com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio.PcmWaveWriter;
 
-import java.io.File;
-
-import java.io.FileNotFoundException;
-
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-
-import java.io.RandomAccessFile;
-
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class TTSUtility extends Application {
 	private static final String TAG = TTSUtility.class.getName();
@@ -59,6 +53,12 @@ public class TTSUtility extends Application {
 	public static final String CODEC_OPUS = "audio/opus";
     public static final int CODEC_OPUS_SAMPLE_RATE = 48000;
 
+    /** Bytes of PCM written to the player at a time while the response is downloaded */
+    public static final int STREAM_CHUNK_SIZE = 4096;
+
+    /** Sentences synthesized ahead of the one playing */
+    public static final int PIPELINE_DEPTH = 2;
+
 	private String username;
 	private String password;
     private String token;
@@ -67,7 +67,9 @@ public class TTSUtility extends Application {
 	private String codec;
 	private int sampleRate;
 	private String server;
-	private AudioTrack audioTrack;
+	private final AudioPlayer player = AudioPlayer.sharedInstance();
+    /** Session of the player, a new synthesis stops the previous one */
+	private int session;
     private TTSPlayCompletionListener playCompletionListener;
     private Handler initializerThreadHandler;
 
@@ -97,18 +99,6 @@ public class TTSUtility extends Application {
 		this.codec = codec;
 	}
 
-    /**
-     * Stop player
-     */
-	private void stopTtsPlayer() {
-        if (audioTrack != null && audioTrack.getState() != AudioTrack.STATE_UNINITIALIZED ) {
-            // IMPORTANT: NOT use stop()
-            // For an immediate stop, use pause(), followed by flush() to discard audio data that hasn't been played back yet.
-            audioTrack.pause();
-            audioTrack.flush();
-        }
-	}
-
     public void setPlayCompletionListener(TTSPlayCompletionListener ttsPlayCompletionListener) {
         this.playCompletionListener = ttsPlayCompletionListener;
     }
@@ -125,33 +115,33 @@ public class TTSUtility extends Application {
 			e.printStackTrace();
 		}
 
-        if(this.codec == CODEC_WAV){
-            this.sampleRate = CODEC_WAV_SAMPLE_RATE;
-        }
-        else{
-            this.sampleRate = CODEC_OPUS_SAMPLE_RATE;
-        }
+        this.sampleRate = requestedSampleRate(this.codec);
 
 		TTSThread thread = new TTSThread();
 		thread.setName("TTSThread");
 		thread.start();
 	}
 
-    private void initPlayer(){
-        stopTtsPlayer();
-        // IMPORTANT: minimum required buffer size for the successful creation of an AudioTrack instance in streaming mode.
-        int bufferSize = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
-
-        synchronized (this) {
-            audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC,
-                    sampleRate,
-                    AudioFormat.CHANNEL_OUT_MONO,
-                    AudioFormat.ENCODING_PCM_16BIT,
-                    bufferSize,
-                    AudioTrack.MODE_STREAM);
-            if (audioTrack != null)
-                audioTrack.play();
-        }
+    /**
+     * Text to speech one sentence at a time: the first sentence plays while it is downloaded and the
+     * next ones are synthesized concurrently, then played in order on the same player
+     * @param arguments
+     */
+    public void synthesizeSentences(String[] arguments) {
+        Log.i(TAG, "Start requesting TTS by sentence... ("+this.codec+")");
+        parseParams(arguments);
+        this.sampleRate = requestedSampleRate(this.codec);
+
+        TTSPipelineThread thread = new TTSPipelineThread();
+        thread.setName("TTSPipelineThread");
+        thread.start();
+    }
+
+    /**
+     * @return sample rate asked to the service for the codec, 0 to use that of the voice
+     */
+    static int requestedSampleRate(String codec) {
+        return codec == CODEC_OPUS ? CODEC_OPUS_SAMPLE_RATE : CODEC_WAV_SAMPLE_RATE;
     }
 
 	private void parseParams(String[] arguments){
@@ -174,16 +164,46 @@ public class TTSUtility extends Application {
 	 * @throws Exception
 	 */
 	public static HttpResponse createPost(String server, String username, String password, String token, String content, String voice, String codec) throws Exception {
+        HttpGet httpGet = createRequest(server, username, password, token, content, voice, codec);
+        // the shared client reuses the connection of the previous request, the caller releases the response
+        HttpResponse executed = SharedHttpClient.getClient().execute(httpGet);
+
+		return executed;
+	}
+
+    /**
+     * Build the request of a synthesis
+     * @return {@link HttpGet}
+     */
+    public static HttpGet createRequest(String server, String username, String password, String token, String content, String voice, String codec) {
+        HttpGet httpGet = createRequest(server, content, voice, codec);
+        authenticate(httpGet, username, password, token);
+        return httpGet;
+    }
+
+    /**
+     * Build the request of a synthesis, without its authentication
+     * @return {@link HttpGet}
+     */
+    public static HttpGet createRequest(String server, String content, String voice, String codec) {
         String url = server;
 
-        //HTTP GET Client
-        HttpClient httpClient = new DefaultHttpClient();
         //Add params
         List<BasicNameValuePair> params = new LinkedList<BasicNameValuePair>();
         params.add(new BasicNameValuePair("text", content));
         params.add(new BasicNameValuePair("voice", voice));
         params.add(new BasicNameValuePair("accept", codec));
-        HttpGet httpGet = new HttpGet(url+"?"+ URLEncodedUtils.format(params, "utf-8"));
+        return new HttpGet(url+"?"+ URLEncodedUtils.format(params, "utf-8"));
+    }
+
+    /**
+     * Set the authentication header of a request
+     * @param httpGet
+     * @param username
+     * @param password
+     * @param token used instead of the credentials if not null
+     */
+    public static void authenticate(HttpGet httpGet, String username, String password, String token) {
         // use token based authentication if possible, otherwise Basic Authentication will be used
         if (token != null) {
             Log.d(TAG, "using token based authentication");
@@ -192,10 +212,7 @@ public class TTSUtility extends Application {
             Log.d(TAG, "using basic authentication");
             httpGet.setHeader(BasicScheme.authenticate(new UsernamePasswordCredentials(username, password), "UTF-8", false));
         }
-        HttpResponse executed = httpClient.execute(httpGet);
-
-		return executed;
-	}
+    }
 
     /**
      * Get storage path
@@ -222,67 +239,207 @@ public class TTSUtility extends Application {
 		public void run() {
 			android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
 			
-			HttpResponse post;
+			session = player.start();
 			try {
-				post = createPost(server, username, password, token, content, voice, codec);
-		        InputStream is = post.getEntity().getContent();
-
-				byte[] data = null;
-				if(codec == CODEC_WAV) {
-					data = analyzeWavData(is);
-				}
-				else if(codec == CODEC_OPUS){
-					data = analyzeOpusData(is);
-				}
-                initPlayer();
-                audioTrack.write(data, 0, data.length);
-                is.close();
-
+				playStreamed(content);
+				// the track is kept for the next synthesis, wait for the end of the audio instead of releasing it
+				player.drain(session);
 			} catch (Exception e) {
 				e.printStackTrace();
 			} finally {
-                Log.i(TAG, "Stopping audioTrack...");
-				if (audioTrack != null && audioTrack.getState() != AudioTrack.STATE_UNINITIALIZED) {
-					audioTrack.release();
-				}
                 initializerThreadHandler.post(playCompletionRunnable);
 			}
 		}
 	}
 
-    private byte[] analyzeOpusData(InputStream is) {
-        String inFilePath = getBaseDir()+"Watson.opus";
-        String outFilePath = getBaseDir()+"Watson.pcm";
-        File inFile = new File(inFilePath);
-        File outFile = new File(outFilePath);
-        outFile.deleteOnExit();
-        inFile.deleteOnExit();
+    /**
+     * Thread to play a text one sentence at a time, while the next sentences are synthesized
+     */
+    public class TTSPipelineThread extends Thread {
+        @Override
+        public void run() {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+            List<String> segments = SentenceSplitter.split(content, SentenceSplitter.localeOf(voice), SentenceSplitter.MAX_SEGMENT_LENGTH);
+            // synthesis of the segment i + 1 at the index i
+            List<SpeechFuture<byte[]>> pending = new ArrayList<SpeechFuture<byte[]>>();
+            session = player.start();
+            try {
+                for (int i = 1; i <= PIPELINE_DEPTH && i < segments.size(); i++)
+                    pending.add(fetch(segments.get(i)));
+                if (segments.isEmpty() || !playStreamed(segments.get(0)))
+                    return;
+                for (int i = 1; i < segments.size(); i++) {
+                    if (i + PIPELINE_DEPTH < segments.size())
+                        pending.add(fetch(segments.get(i + PIPELINE_DEPTH)));
+                    byte[] audio = pending.get(i - 1).get();
+                    if (!play(new ByteArrayInputStream(audio)))
+                        return;
+                }
+                player.drain(session);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                // stopped or failed: abort the synthesis of the sentences not played
+                for (SpeechFuture<byte[]> future : pending)
+                    future.cancel(true);
+                initializerThreadHandler.post(playCompletionRunnable);
+            }
+        }
+    }
 
+    /**
+     * Play the synthesis of a text from the SynthesisCache, or while it is downloaded
+     * @param text
+     * @return false if the player was stopped before the end
+     * @throws Exception
+     */
+    private boolean playStreamed(String text) throws Exception {
+        SynthesisCache cache = SynthesisCache.sharedInstance();
+        String key = SynthesisCache.key(voice, text, codec, requestedSampleRate(codec));
+        InputStream cached = cache.open(key);
+        if(cached != null) {
+            // played again: no request at all
+            return play(cached);
+        }
+        HttpGet request = createRequest(server, username, password, token, text, voice, codec);
+        HttpResponse post = SharedHttpClient.getClient().execute(request);
+        boolean complete = false;
         try {
-            RandomAccessFile inRaf = new RandomAccessFile(inFile, "rw");
-            byte[] opus = IOUtils.toByteArray(is);
-            inRaf.write(opus);
+            checkStatus(post);
+            SynthesisCache.Recorder is = cache.record(post.getEntity().getContent());
+            if(!play(is))
+                return false;
+            // the trailing chunks are part of the cached response
+            is.drain();
+            complete = true;
+            byte[] response = is.getResponse();
+            if(response != null)
+                cache.put(key, response);
+            return true;
+        } finally {
+            // stopped or failed: drop the rest of the response instead of downloading it to reuse the connection
+            if(complete)
+                SharedHttpClient.release(post);
+            else
+                request.abort();
+        }
+    }
 
-            sampleRate = OggOpus.decode(inFilePath, outFilePath, sampleRate); // zero means to detect the sample rate by decoder
+    /**
+     * Synthesize a text in the background, from the SynthesisCache if possible
+     * @param text
+     * @return the whole response, cancelling it aborts its request
+     */
+    private SpeechFuture<byte[]> fetch(String text) {
+        final String key = SynthesisCache.key(voice, text, codec, requestedSampleRate(codec));
+        final HttpGet request = createRequest(server, username, password, token, text, voice, codec);
+        return SpeechFuture.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return download(request, key);
+            }
+        }, request);
+    }
 
-            RandomAccessFile outRaf = new RandomAccessFile(outFile, "r");
+    /**
+     * Get the whole response of a synthesis, from the SynthesisCache if possible
+     * @param request
+     * @param key key of the synthesis in the SynthesisCache
+     * @return the response
+     * @throws IOException if the request fails, or the service answers with an error
+     */
+    static byte[] download(HttpGet request, String key) throws IOException {
+        SynthesisCache cache = SynthesisCache.sharedInstance();
+        InputStream cached = cache.open(key);
+        if(cached != null)
+            return IOUtils.toByteArray(cached);
+        HttpResponse response = SharedHttpClient.getClient().execute(request);
+        boolean complete = false;
+        try {
+            // an error body (401, 400, 500...) is not audio, it must never be cached
+            checkStatus(response);
+            byte[] audio = IOUtils.toByteArray(response.getEntity().getContent());
+            complete = true;
+            cache.put(key, audio);
+            return audio;
+        } finally {
+            if(complete)
+                SharedHttpClient.release(response);
+            else
+                request.abort();
+        }
+    }
 
-            byte[] data = new byte[(int)outRaf.length()];
+    /**
+     * @param response
+     * @throws IOException if the response is not a synthesis
+     */
+    static void checkStatus(HttpResponse response) throws IOException {
+        if(response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
+            throw new IOException("Synthesis failed: " + response.getStatusLine());
+    }
 
-            int outLength = outRaf.read(data);
+    /**
+     * Play a response of the codec
+     * @param is
+     * @return false if the player was stopped before the end of the stream
+     * @throws IOException
+     */
+    private boolean play(InputStream is) throws IOException, InterruptedException {
+        if(codec == CODEC_OPUS)
+            return playOpusStream(is);
+        return playWavStream(is);
+    }
 
-            inRaf.close();
-            outRaf.close();
-            if(outLength == 0){
-                throw new IOException("Data reading failed");
+    /**
+     * Play a WAV stream while it is downloaded, one chunk at a time, instead of waiting for the whole response
+     * @param is
+     * @return false if the player was stopped before the end of the stream
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private boolean playWavStream(InputStream is) throws IOException, InterruptedException {
+        WavStreamReader wav = new WavStreamReader(is);
+        wav.readHeader();
+        if(wav.getBitsPerSample() != 16)
+            throw new IOException("Unsupported WAV format: " + wav.getBitsPerSample() + " bits");
+        this.sampleRate = wav.getSampleRate();
+        if(!player.configure(session, this.sampleRate, wav.getChannels()))
+            return false;
+        byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+        int read;
+        while((read = wav.read(chunk, 0, chunk.length)) != -1) {
+            // stop downloading once the player is stopped by another synthesis
+            if(player.write(session, chunk, 0, read) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decode an Ogg Opus stream while it is downloaded and play it, one packet at a time, without temporary files
+     * @param is
+     * @return false if the player was stopped before the end of the stream
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private boolean playOpusStream(InputStream is) throws IOException, InterruptedException {
+        OpusStreamDecoder decoder = new OpusStreamDecoder(is, CODEC_OPUS_SAMPLE_RATE);
+        try {
+            decoder.readHeader();
+            this.sampleRate = decoder.getSampleRate();
+            if(!player.configure(session, this.sampleRate, decoder.getChannels()))
+                return false;
+            int count;
+            while((count = decoder.decode()) != -1) {
+                if(player.write(session, decoder.getPcm(), 0, count) < 0)
+                    return false;
             }
-            return data;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+            return true;
+        } finally {
+            decoder.close();
         }
-        return new byte[0];
     }
 
     /**
@@ -18,23 +18,20 @@ package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
 
 import android.util.Log;
 
+import com.ibm.watson.developer_cloud.android.speech_common.v1.CatalogCache;
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SpeechFuture;
 import com.ibm.watson.developer_cloud.android.speech_common.v1.TokenProvider;
 
-import org.apache.http.HttpResponse;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.DefaultHttpClient;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
+import java.util.concurrent.Callable;
 
 /**
  * Speech Recognition Class for SDK functions
@@ -50,6 +47,7 @@ public class TextToSpeech {
     private TokenProvider tokenProvider = null;
     private String voice;
     private TTSPlayCompletionListener playCompletionListener;
+    private SynthesisQueue queue = null;
 
     /**Speech Recognition Shared Instance
      *
@@ -73,8 +71,10 @@ public class TextToSpeech {
         this.setHostURL(uri);
     }
 
-    public void setPlayCompletionListener(TTSPlayCompletionListener ttsPlayCompletionListener) {
+    public synchronized void setPlayCompletionListener(TTSPlayCompletionListener ttsPlayCompletionListener) {
         this.playCompletionListener = ttsPlayCompletionListener;
+        if(this.queue != null)
+            this.queue.setPlayCompletionListener(ttsPlayCompletionListener);
     }
 
     /**
@@ -83,19 +83,64 @@ public class TextToSpeech {
      */
     public void synthesize(String ttsString) {
         Log.d(TAG, "synthesize called: " + this.hostURL.toString() + "/v1/synthesize");
-        String[] Arguments = { this.hostURL.toString()+"/v1/synthesize", this.username, this.password,
-                this.voice, ttsString, this.tokenProvider == null ? null : this.tokenProvider.getToken()};
         try {
-            ttsUtility = new TTSUtility();
-            ttsUtility.setCodec(TTSUtility.CODEC_WAV);
-            ttsUtility.setPlayCompletionListener(playCompletionListener);
-            ttsUtility.synthesize(Arguments);
+            ttsUtility = this.createUtility();
+            ttsUtility.synthesize(this.buildArguments(ttsString));
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Send requests of TTS one sentence at a time, so that the audio of a long text starts with its
+     * first sentence while the next ones are synthesized
+     * @param ttsString
+     */
+    public void synthesizeSentences(String ttsString) {
+        Log.d(TAG, "synthesizeSentences called: " + this.hostURL.toString() + "/v1/synthesize");
+        try {
+            ttsUtility = this.createUtility();
+            ttsUtility.synthesizeSentences(this.buildArguments(ttsString));
         }
         catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Get the queue of utterances, created with the host, the credentials and the token provider set so far
+     * @return the shared queue, which plays with the voice and the listener of this instance
+     */
+    public synchronized SynthesisQueue getQueue() {
+        if(this.queue == null) {
+            this.queue = new SynthesisQueue(this.hostURL.toString()+"/v1/synthesize", this.username, this.password, this.tokenProvider);
+            this.queue.setVoice(this.voice);
+            this.queue.setPlayCompletionListener(this.playCompletionListener);
+        }
+        return this.queue;
+    }
+
+    private TTSUtility createUtility() {
+        TTSUtility utility = new TTSUtility();
+        utility.setCodec(TTSUtility.CODEC_WAV);
+        utility.setPlayCompletionListener(playCompletionListener);
+        return utility;
+    }
+
+    private String[] buildArguments(String ttsString) {
+        return new String[] { this.hostURL.toString()+"/v1/synthesize", this.username, this.password,
+                this.voice, ttsString, this.tokenProvider == null ? null : this.tokenProvider.getToken()};
+    }
+
+    /** Asks the token only when the CatalogCache sends a request */
+    private final CatalogCache.Authenticator authenticator = new CatalogCache.Authenticator() {
+        @Override
+        public void authenticate(HttpGet request) {
+            buildAuthenticationHeader(request);
+        }
+    };
+
     private void buildAuthenticationHeader(HttpGet httpGet) {
 
         // use token based authentication if possible, otherwise Basic Authentication will be used
@@ -108,27 +153,32 @@ public class TextToSpeech {
         }
     }
 
+    /**
+     * Get the list of voices, from the CatalogCache if it is recent
+     * @param httpGet
+     * @return the list of voices
+     * @throws IOException
+     * @throws JSONException
+     */
+    private JSONObject requestVoices(HttpGet httpGet) throws IOException, JSONException {
+        Log.d(TAG,"url: " + httpGet.getURI());
+        httpGet.setHeader("accept", "application/json");
+        String response = CatalogCache.sharedInstance().get(httpGet, this.authenticator);
+        JSONObject object = new JSONObject(response);
+        Log.d(TAG, object.toString());
+        return object;
+    }
+
+    /**
+     * Get the list of voices, from the CatalogCache if it is recent
+     * @return
+     */
     public JSONObject getVoices() {
 
         JSONObject object = null;
 
         try {
-            HttpClient httpClient = new DefaultHttpClient();
-            HttpGet httpGet = new HttpGet(this.hostURL+"/v1/voices");
-            Log.d(TAG,"url: " + this.hostURL+"/v1/voices");
-            this.buildAuthenticationHeader(httpGet);
-            httpGet.setHeader("accept", "application/json");
-            HttpResponse executed = httpClient.execute(httpGet);
-            InputStream is = executed.getEntity().getContent();
-
-            // get the JSON object containing the models from the InputStream
-            BufferedReader streamReader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
-            StringBuilder responseStrBuilder = new StringBuilder();
-            String inputStr;
-            while ((inputStr = streamReader.readLine()) != null)
-                responseStrBuilder.append(inputStr);
-            object = new JSONObject(responseStrBuilder.toString());
-            Log.d(TAG, object.toString());
+            object = this.requestVoices(new HttpGet(this.hostURL+"/v1/voices"));
         } catch (IOException | JSONException e) {
             e.printStackTrace();
         }
@@ -136,6 +186,20 @@ public class TextToSpeech {
         return object;
     }
 
+    /**
+     * Get the list of voices without blocking
+     * @return the future list, failures are reported to its callbacks
+     */
+    public SpeechFuture<JSONObject> getVoicesAsync() {
+        final HttpGet httpGet = new HttpGet(this.hostURL+"/v1/voices");
+        return SpeechFuture.submit(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws IOException, JSONException {
+                return requestVoices(httpGet);
+            }
+        }, httpGet);
+    }
+
     /**
      * Set credentials
      * @param username
@@ -162,7 +226,9 @@ public class TextToSpeech {
     /**
      * Set TTS voice
      */
-    public void setVoice(String voice) {
+    public synchronized void setVoice(String voice) {
         this.voice = voice;
+        if(this.queue != null)
+            this.queue.setVoice(voice);
     }
 }
@@ -0,0 +1,177 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.text_to_speech.v1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a WAV stream as it is downloaded: the chunks before the samples (fmt, LIST...) are parsed,
+ * then the PCM samples are returned in whole frames, without buffering the stream.
+ * A data chunk of unknown size (0 or 0xFFFFFFFF, as sent while synthesizing) lasts until the end of the stream.
+ */
+public class WavStreamReader {
+
+    private final InputStream in;
+    private final byte[] header = new byte[16];
+    private int sampleRate = 0;
+    private int channels = 0;
+    private int bitsPerSample = 0;
+    /** Bytes left in the data chunk, -1 if its size is unknown */
+    private long remaining = -1;
+    private boolean headerRead = false;
+
+    public WavStreamReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the chunks up to the start of the samples
+     * @throws IOException if the stream is not a PCM WAV stream
+     */
+    public void readHeader() throws IOException {
+        this.readFully(this.header, 12);
+        if(!this.isTag(0, "RIFF") || !this.isTag(8, "WAVE"))
+            throw new IOException("Not a WAV stream");
+        while(true) {
+            this.readFully(this.header, 8);
+            long size = readInt(this.header, 4) & 0xFFFFFFFFL;
+            if(this.isTag(0, "data")) {
+                if(this.sampleRate == 0)
+                    throw new IOException("WAV data before its format");
+                this.remaining = size == 0 || size == 0xFFFFFFFFL ? -1 : size;
+                this.headerRead = true;
+                return;
+            }
+            // chunks are padded to an even size
+            long skip = size + (size & 1);
+            if(this.isTag(0, "fmt ")) {
+                if(size < 16)
+                    throw new IOException("Invalid WAV format chunk");
+                this.readFully(this.header, 16);
+                int format = readShort(this.header, 0);
+                if(format != 1 && format != 0xFFFE)
+                    throw new IOException("Unsupported WAV encoding " + format);
+                this.channels = readShort(this.header, 2);
+                this.sampleRate = readInt(this.header, 4);
+                this.bitsPerSample = readShort(this.header, 14);
+                skip -= 16;
+            }
+            this.skipFully(skip);
+        }
+    }
+
+    /**
+     * Read samples, in whole frames
+     * @param buffer
+     * @param offset
+     * @param length at least one frame
+     * @return number of bytes read, a multiple of the frame size; -1 at the end of the samples
+     * @throws IOException
+     */
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if(!this.headerRead)
+            this.readHeader();
+        int frame = this.getFrameSize();
+        if(this.remaining >= 0 && this.remaining < length)
+            length = (int) this.remaining;
+        length -= length % frame;
+        if(length == 0)
+            return -1;
+        int read = this.in.read(buffer, offset, length);
+        if(read == -1)
+            return -1;
+        // complete the last frame, a partial frame cannot be played
+        int partial = read % frame;
+        if(partial != 0) {
+            int missing = frame - partial;
+            int count = this.readAtMost(buffer, offset + read, missing);
+            if(count < missing)
+                read -= partial;
+            else
+                read += missing;
+        }
+        if(this.remaining >= 0)
+            this.remaining -= read;
+        return read > 0 ? read : -1;
+    }
+
+    private int readAtMost(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while(total < length) {
+            int read = this.in.read(buffer, offset + total, length - total);
+            if(read == -1)
+                break;
+            total += read;
+        }
+        return total;
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        if(this.readAtMost(buffer, 0, length) < length)
+            throw new EOFException("Truncated WAV header");
+    }
+
+    private void skipFully(long count) throws IOException {
+        while(count > 0) {
+            long skipped = this.in.skip(count);
+            if(skipped <= 0) {
+                if(this.in.read() == -1)
+                    throw new EOFException("Truncated WAV header");
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private boolean isTag(int offset, String tag) {
+        for(int i = 0; i < 4; i++) {
+            if(this.header[offset + i] != tag.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    public int getChannels() {
+        return this.channels;
+    }
+
+    public int getBitsPerSample() {
+        return this.bitsPerSample;
+    }
+
+    /**
+     * @return bytes per frame, a sample of every channel
+     */
+    public int getFrameSize() {
+        return Math.max(1, this.channels * this.bitsPerSample / 8);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset+1] & 0xff) << 8) |
+                ((data[offset+2] & 0xff) << 16) | ((data[offset+3] & 0xff) << 24);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset+1] & 0xff) << 8);
+    }
+}
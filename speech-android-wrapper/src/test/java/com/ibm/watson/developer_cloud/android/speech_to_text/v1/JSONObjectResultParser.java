@@ -0,0 +1,92 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionAlternative;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Reads the results messages through a JSONObject tree, the way they were read before
+ * RecognitionResultParser: the reference of its test and of its benchmark.
+ */
+class JSONObjectResultParser {
+
+    private JSONObjectResultParser() {}
+
+    /**
+     * @param message a message of the STT service
+     * @return the results of the message, null if it carries no results or is not valid JSON
+     */
+    static RecognitionResult[] parse(String message) {
+        try {
+            JSONObject obj = new JSONObject(message);
+            JSONArray results = obj.optJSONArray("results");
+            if(results == null)
+                return null;
+            int index = obj.optInt("result_index", 0);
+            RecognitionResult[] parsed = new RecognitionResult[results.length()];
+            for(int i = 0; i < results.length(); i++) {
+                JSONObject result = results.getJSONObject(i);
+                JSONArray alternatives = result.optJSONArray("alternatives");
+                RecognitionAlternative[] read = new RecognitionAlternative[alternatives != null ? alternatives.length() : 0];
+                for(int j = 0; j < read.length; j++)
+                    read[j] = parseAlternative(alternatives.getJSONObject(j));
+                parsed[i] = new RecognitionResult(index + i, result.optBoolean("final", false), read);
+            }
+            return parsed;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static RecognitionAlternative parseAlternative(JSONObject alternative) throws JSONException {
+        String[] words = null;
+        double[] startTimes = null;
+        double[] endTimes = null;
+        double[] confidences = null;
+        JSONArray timestamps = alternative.optJSONArray("timestamps");
+        if(timestamps != null) {
+            words = new String[timestamps.length()];
+            startTimes = new double[words.length];
+            endTimes = new double[words.length];
+            for(int i = 0; i < words.length; i++) {
+                JSONArray timestamp = timestamps.getJSONArray(i);
+                words[i] = timestamp.getString(0);
+                startTimes[i] = timestamp.getDouble(1);
+                endTimes[i] = timestamp.getDouble(2);
+            }
+        }
+        JSONArray wordConfidence = alternative.optJSONArray("word_confidence");
+        if(wordConfidence != null) {
+            confidences = new double[wordConfidence.length()];
+            String[] confidenceWords = new String[confidences.length];
+            for(int i = 0; i < confidences.length; i++) {
+                JSONArray confidence = wordConfidence.getJSONArray(i);
+                confidenceWords[i] = confidence.getString(0);
+                confidences[i] = confidence.getDouble(1);
+            }
+            if(words == null)
+                words = confidenceWords;
+        }
+        return new RecognitionAlternative(alternative.optString("transcript", ""),
+                alternative.optDouble("confidence", Double.NaN), words, startTimes, endTimes, confidences);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Time and memory per message of RecognitionResultParser against the JSONObject reading, on a desktop JVM.
+ * The JSONObject side reads the transcript and the word timings back out of the tree.
+ * Usage: RecognitionResultParserBenchmark [iterations]
+ */
+public class RecognitionResultParserBenchmark {
+
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dogs"};
+
+    private interface Parser {
+        Object parse(String message);
+    }
+
+    private static final Parser STREAMING = new Parser() {
+        @Override
+        public Object parse(String message) {
+            return RecognitionResultParser.parse(message);
+        }
+    };
+
+    private static final Parser TREE = new Parser() {
+        @Override
+        public Object parse(String message) {
+            return JSONObjectResultParser.parse(message);
+        }
+    };
+
+    /**
+     * @return a results message of the service, final messages carry the word timings
+     */
+    static String message(int words, boolean isFinal) {
+        StringBuilder transcript = new StringBuilder();
+        StringBuilder timestamps = new StringBuilder();
+        for(int i = 0; i < words; i++) {
+            String word = WORDS[i % WORDS.length];
+            transcript.append(word).append(' ');
+            if(i > 0)
+                timestamps.append(", ");
+            timestamps.append(String.format(Locale.US, "[\"%s\", %.2f, %.2f]", word, i * 0.37, (i + 1) * 0.37));
+        }
+        StringBuilder sb = new StringBuilder("{\"results\": [{\"alternatives\": [{");
+        if(isFinal)
+            sb.append("\"timestamps\": [").append(timestamps).append("], \"confidence\": 0.913, ");
+        sb.append("\"transcript\": \"").append(transcript).append("\"}], \"final\": ").append(isFinal).append("}], \"result_index\": 0}");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int[] sizes = {5, 30};
+        for(int words : sizes) {
+            for(int f = 0; f < 2; f++) {
+                boolean isFinal = f == 1;
+                String message = message(words, isFinal);
+                String name = words + " words, " + (isFinal ? "final" : "interim");
+                System.out.println(name + ": JSONObject " + run(TREE, message, iterations) + "  ->  streaming " + run(STREAMING, message, iterations));
+            }
+        }
+    }
+
+    /**
+     * @return time and bytes allocated per message, after a warm-up of the same length
+     */
+    private static String run(Parser parser, String message, int iterations) {
+        int sink = 0;
+        for(int i = 0; i < iterations; i++)
+            sink += parser.parse(message) != null ? 1 : 0;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++)
+            sink += parser.parse(message) != null ? 1 : 0;
+        long time = System.nanoTime() - start;
+        if(allocated >= 0)
+            allocated = allocatedBytes() - allocated;
+        if(sink != 2 * iterations)
+            throw new IllegalStateException("message not parsed");
+        String perMessage = String.format(Locale.US, "%.1f us", time / 1000.0 / iterations);
+        if(allocated >= 0)
+            perMessage += String.format(Locale.US, " / %.1f kB", allocated / 1024.0 / iterations);
+        return perMessage;
+    }
+
+    /**
+     * @return bytes allocated by the current thread, negative where the JVM does not count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionAlternative;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+
+/**
+ * Checks RecognitionResultParser against the JSONObject reading it replaced.
+ */
+public class RecognitionResultParserTest {
+
+    static final String INTERIM = "{\"results\": [{\"alternatives\": [{\"transcript\": \"the quick brown fox \"}], \"final\": false}], \"result_index\": 0}";
+    static final String FINAL = "{\"results\": [{\"alternatives\": [{\"timestamps\": [[\"the\", 0.12, 0.3], [\"quick\", 0.3, 0.61], "
+            + "[\"brown\", 0.61, 0.9], [\"fox\", 0.9, 1.27], [\"jumps\", 1.27, 1.73]], \"confidence\": 0.987, "
+            + "\"transcript\": \"the quick brown fox jumps \"}], \"final\": true}], \"result_index\": 3}";
+
+    private static final String[] MESSAGES = {
+        INTERIM,
+        FINAL,
+        // word confidences without timestamps, several alternatives
+        "{\"results\": [{\"alternatives\": [{\"word_confidence\": [[\"hello\", 0.95], [\"world\", 0.5]], \"confidence\": 0.8, "
+            + "\"transcript\": \"hello world \"}, {\"transcript\": \"yellow world \"}], \"final\": true}], \"result_index\": 1}",
+        // timestamps and word confidences, result_index first, several results
+        "{\"result_index\": 7, \"results\": [{\"final\": true, \"alternatives\": [{\"transcript\": \"a\", "
+            + "\"timestamps\": [[\"a\", 1e-2, 2.5E1]], \"word_confidence\": [[\"a\", 1]]}]}, "
+            + "{\"final\": false, \"alternatives\": [{\"transcript\": \"b \"}]}]}",
+        // escapes, unicode and unknown keys holding every kind of value
+        "{\"results\": [{\"keywords_result\": {\"k\": [1, 2.5, -3, true, null, \"x\\\"]}\"]}, \"alternatives\": "
+            + "[{\"transcript\": \"caf\\u00e9 \\\"quoted\\\" \\\\ line\\nbreak\"}], \"final\": null}], \"warnings\": [\"w\"]}",
+        // empty results and alternatives
+        "{\"results\": [], \"result_index\": 0}",
+        "{\"results\": [{\"alternatives\": [], \"final\": true}]}",
+        // whitespace everywhere
+        " {\n\t\"results\" : [ { \"alternatives\" : [ { \"transcript\" : \"spaced\" , \"confidence\" : 0.5 } ] , \"final\" : true } ] } ",
+    };
+
+    @Test
+    public void parsesLikeJSONObject() {
+        for(String message : MESSAGES) {
+            RecognitionResult[] expected = JSONObjectResultParser.parse(message);
+            assertNotNull(message, expected);
+            assertResultsEqual(message, expected, RecognitionResultParser.parse(message));
+        }
+    }
+
+    @Test
+    public void ignoresMessagesWithoutResults() {
+        assertNull(RecognitionResultParser.parse("{\"state\": \"listening\"}"));
+        assertNull(RecognitionResultParser.parse("{\"error\": \"No speech detected for 30s.\"}"));
+    }
+
+    @Test
+    public void ignoresInvalidMessages() {
+        assertNull(RecognitionResultParser.parse("{\"results\": [{\"alternatives\": [{\"transcript\": \"cut"));
+        assertNull(RecognitionResultParser.parse("{\"results\": [{\"final\": maybe}]}"));
+        assertNull(RecognitionResultParser.parse("\"results\""));
+    }
+
+    @Test
+    public void keepsResultIndexes() {
+        RecognitionResult[] results = RecognitionResultParser.parse(FINAL);
+        assertEquals(1, results.length);
+        assertEquals(3, results[0].getIndex());
+        assertEquals(true, results[0].isFinal());
+        assertEquals(1.73, results[0].getBest().getEndTimes()[4], 0);
+    }
+
+    private static void assertResultsEqual(String message, RecognitionResult[] expected, RecognitionResult[] actual) {
+        assertNotNull(message, actual);
+        assertEquals(message, expected.length, actual.length);
+        for(int i = 0; i < expected.length; i++) {
+            assertEquals(message, expected[i].getIndex(), actual[i].getIndex());
+            assertEquals(message, expected[i].isFinal(), actual[i].isFinal());
+            RecognitionAlternative[] expectedAlternatives = expected[i].getAlternatives();
+            RecognitionAlternative[] actualAlternatives = actual[i].getAlternatives();
+            assertEquals(message, expectedAlternatives.length, actualAlternatives.length);
+            for(int j = 0; j < expectedAlternatives.length; j++) {
+                RecognitionAlternative e = expectedAlternatives[j];
+                RecognitionAlternative a = actualAlternatives[j];
+                assertEquals(message, e.getTranscript(), a.getTranscript());
+                assertEquals(message, e.getConfidence(), a.getConfidence(), 0);
+                assertArrayEquals(message, e.getWords(), a.getWords());
+                assertArrayEquals(message, e.getStartTimes(), a.getStartTimes(), 0);
+                assertArrayEquals(message, e.getEndTimes(), a.getEndTimes(), 0);
+                assertArrayEquals(message, e.getWordConfidences(), a.getWordConfidences(), 0);
+            }
+        }
+    }
+}
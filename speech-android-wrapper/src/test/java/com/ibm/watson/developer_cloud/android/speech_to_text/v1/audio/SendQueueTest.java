@@ -0,0 +1,165 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.watson.developer_cloud.android.speech_common.v1.SharedExecutors;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
+
+/**
+ * Feeds the send queue through the frame coalescer, wired as in the uploader, while the socket stops draining.
+ */
+public class SendQueueTest {
+
+    /** 100 ms of 16 kHz, 16 bit, mono audio */
+    private static final int CHUNK_BYTES = SpeechConfiguration.SAMPLE_RATE * 2 / 10;
+    private static final int CHUNKS = 100;
+    /** Longest time (s) to wait for a thread */
+    private static final int TIMEOUT = 10;
+
+    private final AtomicBoolean stuck = new AtomicBoolean(true);
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicInteger written = new AtomicInteger();
+    private SendQueue queue;
+    private FrameCoalescer coalescer;
+
+    @Before
+    public void createQueue() {
+        SpeechConfiguration config = new SpeechConfiguration(SpeechConfiguration.AUDIO_FORMAT_DEFAULT, false);
+        config.coalescingDelay = 20;
+        config.sendQueueMaxBytes = 4 * CHUNK_BYTES;
+        config.sendQueueMaxDelay = 60000;
+        config.sendQueuePolicy = SpeechConfiguration.QUEUE_POLICY_BLOCK;
+        this.queue = new SendQueue(new SendQueue.ISocket() {
+            @Override
+            public long getBufferedBytes() {
+                return stuck.get() ? SendQueue.SOCKET_WATERMARK : 0;
+            }
+            @Override
+            public void send(String message) {}
+            @Override
+            public void send(byte[] data) {
+                received.addAndGet(data.length);
+            }
+        }, new SendQueue.IOverflowHandler() {
+            @Override
+            public boolean onReduceBitrate() {
+                return false;
+            }
+            @Override
+            public void onOverflowFailure() {}
+        }, config, new UploadStatistics(), SharedExecutors.getScheduler());
+        this.coalescer = new FrameCoalescer(new FrameCoalescer.ISink() {
+            @Override
+            public void send(byte[] data) {
+                queue.offer(data, true);
+            }
+            @Override
+            public boolean offer(byte[] data) {
+                return queue.offerNow(data, true);
+            }
+        }, config.coalescingThreshold, config.coalescingDelay, SharedExecutors.getScheduler());
+    }
+
+    /**
+     * Write the audio at a pace that lets the timer flush most of it
+     */
+    private Thread startProducer() {
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for(int i = 0; i < CHUNKS; i++) {
+                    coalescer.write(new byte[CHUNK_BYTES]);
+                    written.incrementAndGet();
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.start();
+        return producer;
+    }
+
+    /**
+     * Wait until the producer stops making progress
+     */
+    private void awaitBlocked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+        int last = -1;
+        while(this.written.get() != last) {
+            assertTrue("producer not blocked", System.currentTimeMillis() < deadline);
+            last = this.written.get();
+            Thread.sleep(200);
+        }
+        assertTrue(last < CHUNKS);
+    }
+
+    private static void assertSchedulerRuns() throws InterruptedException {
+        final CountDownLatch ran = new CountDownLatch(1);
+        SharedExecutors.getScheduler().execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue("shared scheduler blocked", ran.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void blockedProducerLeavesTheSchedulerFree() throws Exception {
+        Thread producer = this.startProducer();
+        this.awaitBlocked();
+        assertSchedulerRuns();
+        // the producer drains the queue itself once the socket takes data again
+        this.stuck.set(false);
+        producer.join(TIMEOUT * 1000);
+        assertFalse("producer still blocked", producer.isAlive());
+        this.coalescer.flush();
+        this.queue.close();
+        assertEquals(CHUNKS * CHUNK_BYTES, this.received.get());
+    }
+
+    @Test
+    public void unblockReleasesTheProducer() throws Exception {
+        Thread producer = this.startProducer();
+        this.awaitBlocked();
+        // the order of WebSocketUploader.close(), the socket never drains again
+        this.queue.unblock();
+        producer.join(TIMEOUT * 1000);
+        assertFalse("producer still blocked", producer.isAlive());
+        this.coalescer.flush();
+        this.queue.close();
+        assertSchedulerRuns();
+        assertEquals(CHUNKS * CHUNK_BYTES, this.received.get());
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.android.speech_to_text.v1.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.IResultDelegate;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.ISpeechDelegate;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.IUtteranceDelegate;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.RecognitionResult;
+import com.ibm.watson.developer_cloud.android.speech_to_text.v1.dto.SpeechConfiguration;
+import com.ibm.watson.developer_cloud.mock_server.v1.MockConfiguration;
+import com.ibm.watson.developer_cloud.mock_server.v1.MockSpeechServer;
+import com.ibm.watson.developer_cloud.mock_server.v1.ServerStatistics;
+
+/**
+ * Streams raw audio through the uploader to the mock server, and checks what each side received.
+ */
+public class WebSocketUploaderTest {
+
+    /** 100 ms of 16 kHz, 16 bit, mono audio */
+    private static final int CHUNK_BYTES = SpeechConfiguration.SAMPLE_RATE * 2 / 10;
+    /** Longest time (s) to wait for the server */
+    private static final int TIMEOUT = 10;
+
+    private MockSpeechServer server;
+    private String url;
+
+    /**
+     * Collects the events of the uploader
+     */
+    private static class Delegate implements ISpeechDelegate, IResultDelegate, IUtteranceDelegate {
+        final CountDownLatch ended;
+        final AtomicInteger opened = new AtomicInteger();
+        final List<String> errors = new ArrayList<String>();
+        final StringBuilder transcript = new StringBuilder();
+
+        Delegate(int utterances) {
+            this.ended = new CountDownLatch(utterances);
+        }
+
+        @Override
+        public void onOpen() {
+            this.opened.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void onError(String error) {
+            this.errors.add(error);
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {}
+
+        @Override
+        public void onMessage(String message) {}
+
+        @Override
+        public void onAmplitude(double amplitude, double volume) {}
+
+        @Override
+        public synchronized void onResults(RecognitionResult[] results) {
+            for(RecognitionResult result : results) {
+                if(result.isFinal())
+                    this.transcript.append(result.getBest().getTranscript());
+            }
+        }
+
+        @Override
+        public void onUtteranceStart(int utterance) {}
+
+        @Override
+        public void onUtteranceEnd(int utterance) {
+            this.ended.countDown();
+        }
+    }
+
+    @Before
+    public void startServer() throws Exception {
+        int port;
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            port = socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+        MockConfiguration config = new MockConfiguration();
+        config.latency = 0;
+        config.finalInterval = 1.0;
+        this.server = new MockSpeechServer(port, config);
+        this.server.start();
+        this.url = "ws://localhost:" + port + "/v1/recognize";
+        // the server binds its port on its own thread
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+        while(true) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                if(System.currentTimeMillis() > deadline)
+                    throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        this.server.shutdown();
+    }
+
+    private WebSocketUploader createUploader(SpeechConfiguration config, Delegate delegate) throws Exception {
+        Map<String, String> header = new HashMap<String, String>();
+        header.put("Content-Type", config.audioFormat);
+        WebSocketUploader uploader = new WebSocketUploader(this.url, header, config);
+        uploader.setDelegate(delegate);
+        return uploader;
+    }
+
+    /**
+     * Start an utterance and send the audio once the start message is out
+     */
+    private static void sendUtterance(WebSocketUploader uploader, int chunks) throws InterruptedException {
+        uploader.prepare();
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+        while(!uploader.isUploadPrepared()) {
+            assertTrue("stream not started", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        for(int i = 0; i < chunks; i++)
+            uploader.onHasData(new byte[CHUNK_BYTES]);
+        uploader.stop();
+    }
+
+    @Test
+    public void streamsAnUtterance() throws Exception {
+        SpeechConfiguration config = new SpeechConfiguration(SpeechConfiguration.AUDIO_FORMAT_DEFAULT, false);
+        config.timestamps = true;
+        Delegate delegate = new Delegate(1);
+        WebSocketUploader uploader = this.createUploader(config, delegate);
+        sendUtterance(uploader, 20);
+        assertTrue("utterance not completed", delegate.ended.await(TIMEOUT, TimeUnit.SECONDS));
+        uploader.close();
+
+        ServerStatistics statistics = this.server.getStatistics();
+        assertEquals(1, statistics.getConnections());
+        assertEquals(1, statistics.getUtterances());
+        assertEquals(1, delegate.opened.get());
+        assertEquals(20 * CHUNK_BYTES, statistics.getAudioBytes());
+        assertEquals(0, statistics.getErrors());
+        // one final result per second of audio, with the words of the script
+        assertEquals(2, statistics.getFinalResults());
+        assertEquals("the quick brown fox ", delegate.transcript.toString());
+        assertEquals(2, uploader.getTimeline().getFinalResults().size());
+        // the second result holds two words of 0.4 s from 1.0 s
+        assertEquals(1.8, uploader.getTimeline().getFinalResults().get(1).audioEnd, 1e-6);
+        assertTrue(delegate.errors.toString(), delegate.errors.isEmpty());
+    }
+
+    @Test
+    public void streamsUtterancesOnAPersistentConnection() throws Exception {
+        SpeechConfiguration config = new SpeechConfiguration(SpeechConfiguration.AUDIO_FORMAT_DEFAULT, false);
+        config.persistentSession = true;
+        Delegate delegate = new Delegate(2);
+        WebSocketUploader uploader = this.createUploader(config, delegate);
+        sendUtterance(uploader, 10);
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+        while(delegate.ended.getCount() == 2) {
+            assertTrue("first utterance not completed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        sendUtterance(uploader, 10);
+        assertTrue("second utterance not completed", delegate.ended.await(TIMEOUT, TimeUnit.SECONDS));
+        uploader.close();
+
+        ServerStatistics statistics = this.server.getStatistics();
+        assertEquals(1, statistics.getConnections());
+        assertEquals(2, statistics.getUtterances());
+        assertEquals(2, delegate.opened.get());
+        assertEquals(20 * CHUNK_BYTES, statistics.getAudioBytes());
+        assertEquals(0, statistics.getErrors());
+        // the script of the server goes on from one utterance to the next
+        assertEquals("the quick brown fox ", delegate.transcript.toString());
+        assertTrue(delegate.errors.toString(), delegate.errors.isEmpty());
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.mock_server.v1;
+
+/**
+ * Script of the mock server: what it recognizes, how fast it answers and how often it fails.
+ */
+public class MockConfiguration {
+
+    // Words returned by the server, repeated as long as there is audio
+    public String[] words = "the quick brown fox jumps over the lazy dog".split(" ");
+    // Duration (s) of audio recognized as one word
+    public double wordDuration = 0.4;
+    // Audio (s) between two interim results
+    public double interimInterval = 0.5;
+    // Audio (s) finalized as one result, the utterance end finalizes the rest
+    public double finalInterval = 3.0;
+    // Time (ms) between the audio and the results computed from it
+    public int latency = 100;
+    // Random extra latency (ms), results are never reordered
+    public int jitter = 0;
+    // Probability for each audio message to fail the recognition with an error message
+    public double errorRate = 0;
+    // Close the connection once an utterance has received this many audio bytes, 0 never closes
+    public long dropAfterBytes = 0;
+    // Answer an unknown content type or an invalid Ogg page with an error message
+    public boolean strict = true;
+}
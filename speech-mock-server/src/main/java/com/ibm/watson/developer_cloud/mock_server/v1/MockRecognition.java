@@ -0,0 +1,283 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.mock_server.v1;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.java_websocket.WebSocket;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * State of the /v1/recognize protocol on one connection: a start message, audio, an empty message
+ * (or a stop action) ending the utterance, then the same again for the next utterance.
+ */
+public class MockRecognition {
+
+    private static final String CONTENT_TYPE_L16 = "audio/l16";
+    private static final String CONTENT_TYPE_OGG = "audio/ogg";
+
+    private final WebSocket socket;
+    private final MockConfiguration config;
+    private final ServerStatistics statistics;
+    private final ScheduledExecutorService scheduler;
+    private final Random random = new Random();
+    /** Content type of the upgrade request, used when the start message has none */
+    private final String defaultContentType;
+
+    private boolean started = false;
+    private boolean ogg = false;
+    private int sampleRate = 16000;
+    private boolean interimResults = false;
+    private boolean timestamps = false;
+    private boolean wordConfidence = false;
+    private OggStreamValidator validator;
+    private long audioBytes = 0;
+    /** Audio (s) received in the current utterance */
+    private double audioSeconds = 0;
+    /** Audio (s) already covered by final results */
+    private double finalizedSeconds = 0;
+    private double lastInterim = 0;
+    private int resultIndex = 0;
+    /** Index of the next word of the script */
+    private int wordIndex = 0;
+    /** Time (ms) the last message is sent, later messages are never sent before it */
+    private long lastSendTime = 0;
+    private boolean failed = false;
+
+    public MockRecognition(WebSocket socket, String contentType, MockConfiguration config, ServerStatistics statistics, ScheduledExecutorService scheduler) {
+        this.socket = socket;
+        this.defaultContentType = contentType;
+        this.config = config;
+        this.statistics = statistics;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void onText(String message) {
+        if(this.failed)
+            return;
+        JSONObject obj;
+        try {
+            obj = new JSONObject(message);
+        } catch (JSONException e) {
+            this.fail("Invalid JSON: " + e.getMessage());
+            return;
+        }
+        String action = obj.optString("action");
+        if("start".equals(action)) {
+            if(this.started) {
+                this.fail("Start action received before the end of the utterance");
+                return;
+            }
+            String contentType = obj.optString("content-type", this.defaultContentType);
+            if(!this.configure(contentType))
+                return;
+            this.interimResults = obj.optBoolean("interim_results", false);
+            this.timestamps = obj.optBoolean("timestamps", false);
+            this.wordConfidence = obj.optBoolean("word_confidence", false);
+            this.started = true;
+            this.statistics.onUtterance();
+            this.send(state("listening"));
+        }
+        else if("stop".equals(action)) {
+            this.endUtterance();
+        }
+        else {
+            this.fail("Unknown action: " + action);
+        }
+    }
+
+    public synchronized void onAudio(byte[] data) {
+        if(this.failed)
+            return;
+        if(data.length == 0) {
+            this.endUtterance();
+            return;
+        }
+        if(!this.started) {
+            this.fail("Audio received before the start action");
+            return;
+        }
+        this.statistics.onAudio(data.length);
+        if(this.config.errorRate > 0 && this.random.nextDouble() < this.config.errorRate) {
+            this.fail("Mock recognition failure");
+            return;
+        }
+        this.audioBytes += data.length;
+        if(this.ogg) {
+            try {
+                int pages = this.validator.getPages();
+                this.validator.write(data);
+                this.statistics.onOggPages(this.validator.getPages() - pages);
+            } catch (IOException e) {
+                this.statistics.onInvalidPage();
+                if(this.config.strict) {
+                    this.fail(e.getMessage());
+                    return;
+                }
+            }
+            this.audioSeconds = this.validator.getAudioSeconds();
+        }
+        else {
+            this.audioSeconds = this.audioBytes / (2.0 * this.sampleRate);
+        }
+        if(this.config.dropAfterBytes > 0 && this.audioBytes >= this.config.dropAfterBytes) {
+            this.failed = true;
+            this.socket.close(1011, "Mock connection drop");
+            return;
+        }
+        if(this.audioSeconds - this.finalizedSeconds >= this.config.finalInterval) {
+            this.sendResult(this.finalizedSeconds + this.config.finalInterval, true);
+        }
+        else if(this.interimResults && this.audioSeconds - this.lastInterim >= this.config.interimInterval) {
+            this.lastInterim = this.audioSeconds;
+            this.sendResult(this.audioSeconds, false);
+        }
+    }
+
+    /**
+     * @return false if the content type is not supported
+     */
+    private boolean configure(String contentType) {
+        String type = contentType != null ? contentType.toLowerCase() : "";
+        if(type.startsWith(CONTENT_TYPE_OGG)) {
+            this.ogg = true;
+            this.validator = new OggStreamValidator();
+            return true;
+        }
+        if(type.startsWith(CONTENT_TYPE_L16)) {
+            this.ogg = false;
+            int rate = type.indexOf("rate=");
+            if(rate >= 0) {
+                try {
+                    this.sampleRate = Integer.parseInt(type.substring(rate + 5).split("[;,\\s]")[0]);
+                } catch (NumberFormatException e) {
+                    this.fail("Invalid sample rate: " + contentType);
+                    return false;
+                }
+            }
+            return true;
+        }
+        if(this.config.strict) {
+            this.fail("Unsupported content type: " + contentType);
+            return false;
+        }
+        return true;
+    }
+
+    private void endUtterance() {
+        if(!this.started)
+            return;
+        if(this.audioSeconds > this.finalizedSeconds)
+            this.sendResult(this.audioSeconds, true);
+        this.send(state("listening"));
+        this.started = false;
+        this.audioBytes = 0;
+        this.audioSeconds = 0;
+        this.finalizedSeconds = 0;
+        this.lastInterim = 0;
+    }
+
+    /**
+     * Result covering the audio from the last final result up to the given time
+     */
+    private void sendResult(double end, boolean isFinal) {
+        try {
+            JSONArray timestamps = new JSONArray();
+            JSONArray confidences = new JSONArray();
+            StringBuilder transcript = new StringBuilder();
+            int word = this.wordIndex;
+            for(double t = this.finalizedSeconds; t + this.config.wordDuration <= end + 1e-6; t += this.config.wordDuration) {
+                String w = this.config.words[word++ % this.config.words.length];
+                transcript.append(w).append(' ');
+                timestamps.put(new JSONArray().put(w).put(round(t)).put(round(t + this.config.wordDuration)));
+                confidences.put(new JSONArray().put(w).put(0.9));
+            }
+            if(!isFinal && timestamps.length() == 0)
+                return;
+            JSONObject alternative = new JSONObject();
+            alternative.put("transcript", transcript.toString());
+            if(isFinal)
+                alternative.put("confidence", 0.9);
+            if(this.timestamps)
+                alternative.put("timestamps", timestamps);
+            if(this.wordConfidence && isFinal)
+                alternative.put("word_confidence", confidences);
+            JSONObject result = new JSONObject();
+            result.put("alternatives", new JSONArray().put(alternative));
+            result.put("final", isFinal);
+            JSONObject message = new JSONObject();
+            message.put("results", new JSONArray().put(result));
+            message.put("result_index", this.resultIndex);
+            if(isFinal) {
+                this.resultIndex++;
+                this.wordIndex = word;
+                this.finalizedSeconds = end;
+            }
+            this.statistics.onResult(isFinal);
+            this.send(message.toString());
+        } catch (JSONException e) {
+            this.fail(e.getMessage());
+        }
+    }
+
+    private void fail(String error) {
+        this.failed = true;
+        this.statistics.onError();
+        JSONObject obj = new JSONObject();
+        try {
+            obj.put("error", error);
+        } catch (JSONException e) {
+            // cannot happen with a string value
+        }
+        this.send(obj.toString());
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                socket.close(1011, "Recognition failed");
+            }
+        }, Math.max(0, this.lastSendTime - System.currentTimeMillis()) + 10, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a message after the configured latency, in order
+     */
+    private void send(final String message) {
+        long now = System.currentTimeMillis();
+        long delay = this.config.latency + (this.config.jitter > 0 ? this.random.nextInt(this.config.jitter + 1) : 0);
+        this.lastSendTime = Math.max(this.lastSendTime, now + delay);
+        this.scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if(socket.isOpen())
+                    socket.send(message);
+            }
+        }, this.lastSendTime - now, TimeUnit.MILLISECONDS);
+    }
+
+    private static String state(String state) {
+        return "{\"state\":\"" + state + "\"}";
+    }
+
+    private static double round(double seconds) {
+        return Math.round(seconds * 100) / 100.0;
+    }
+}
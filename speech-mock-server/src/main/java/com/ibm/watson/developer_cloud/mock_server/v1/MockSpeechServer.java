@@ -0,0 +1,140 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.mock_server.v1;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * Local stand-in for the /v1/recognize WebSocket endpoint of the STT service.
+ * Point the SDK at ws://localhost:port to run integration tests and benchmarks offline.
+ */
+public class MockSpeechServer extends WebSocketServer {
+    public static final String COPYRIGHT_NOTICE = "(c) Copyright IBM Corp. 2015";
+    private static final String RECOGNIZE_PATH = "/v1/recognize";
+
+    private final MockConfiguration config;
+    private final ServerStatistics statistics = new ServerStatistics();
+    private final Map<WebSocket, MockRecognition> recognitions = new ConcurrentHashMap<WebSocket, MockRecognition>();
+    /** A single thread sends the results, so that messages scheduled for the same time keep their order */
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "MockSpeechResults");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public MockSpeechServer(int port, MockConfiguration config) {
+        super(new InetSocketAddress(port));
+        this.config = config;
+    }
+
+    /**
+     * Start the server on a daemon thread, stop() does not always end the selector thread of the library
+     */
+    @Override
+    public void start() {
+        Thread thread = new Thread(this, "MockSpeechServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        String path = handshake.getResourceDescriptor();
+        if(path == null || !path.startsWith(RECOGNIZE_PATH)) {
+            conn.close(1008, "Unknown endpoint: " + path);
+            return;
+        }
+        this.statistics.onConnection();
+        String contentType = handshake.hasFieldValue("Content-Type") ? handshake.getFieldValue("Content-Type") : null;
+        this.recognitions.put(conn, new MockRecognition(conn, contentType, this.config, this.statistics, this.scheduler));
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        this.recognitions.remove(conn);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        MockRecognition recognition = this.recognitions.get(conn);
+        if(recognition != null)
+            recognition.onText(message);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        MockRecognition recognition = this.recognitions.get(conn);
+        if(recognition == null)
+            return;
+        byte[] data = new byte[message.remaining()];
+        message.get(data);
+        recognition.onAudio(data);
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        System.err.println("mock server error: " + ex.getMessage());
+    }
+
+    /**
+     * Stop the server and its result thread
+     */
+    public void shutdown() throws IOException, InterruptedException {
+        this.stop();
+        this.scheduler.shutdownNow();
+    }
+
+    public ServerStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Run the server until the process is stopped
+     * @param args port [latency ms] [jitter ms] [error rate]
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        MockConfiguration config = new MockConfiguration();
+        if(args.length > 1)
+            config.latency = Integer.parseInt(args[1]);
+        if(args.length > 2)
+            config.jitter = Integer.parseInt(args[2]);
+        if(args.length > 3)
+            config.errorRate = Double.parseDouble(args[3]);
+        MockSpeechServer server = new MockSpeechServer(port, config);
+        server.start();
+        System.out.println("mock STT server listening on ws://localhost:" + port + RECOGNIZE_PATH);
+        while(true) {
+            Thread.sleep(10000);
+            System.out.println(server.getStatistics());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.mock_server.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Reassembles Ogg pages from WebSocket messages (a page may span several messages), checks their
+ * capture pattern, CRC and sequence numbers, and measures the Opus audio from the packet TOC bytes.
+ */
+public class OggStreamValidator {
+
+    private static final int HEADER_SIZE = 27;
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // Ogg CRC: polynomial 0x04c11db7, not reflected, initial value 0
+        for(int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for(int j = 0; j < 8; j++)
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    private byte[] pending = new byte[0];
+    private int pendingLength = 0;
+    /** Packet continued on the next page */
+    private final ByteArrayOutputStream packet = new ByteArrayOutputStream();
+    private long expectedSequence = 0;
+    private int serial;
+    private int pages = 0;
+    private int packets = 0;
+    private double audioSeconds = 0;
+    private boolean endOfStream = false;
+
+    /**
+     * @param data
+     * @throws IOException if a page is invalid
+     */
+    public void write(byte[] data) throws IOException {
+        if(this.pendingLength + data.length > this.pending.length) {
+            byte[] larger = new byte[Math.max(this.pending.length * 2, this.pendingLength + data.length)];
+            System.arraycopy(this.pending, 0, larger, 0, this.pendingLength);
+            this.pending = larger;
+        }
+        System.arraycopy(data, 0, this.pending, this.pendingLength, data.length);
+        this.pendingLength += data.length;
+
+        int offset = 0;
+        while(true) {
+            int size = this.pageSize(offset);
+            if(size < 0)
+                break;
+            this.readPage(offset, size);
+            offset += size;
+        }
+        System.arraycopy(this.pending, offset, this.pending, 0, this.pendingLength - offset);
+        this.pendingLength -= offset;
+    }
+
+    /**
+     * @return size of the page at the offset, -1 if it is not complete
+     */
+    private int pageSize(int offset) throws IOException {
+        int available = this.pendingLength - offset;
+        if(available < HEADER_SIZE)
+            return -1;
+        if(this.pending[offset] != 'O' || this.pending[offset + 1] != 'g' || this.pending[offset + 2] != 'g' || this.pending[offset + 3] != 'S')
+            throw new IOException("Missing Ogg capture pattern at page " + this.pages);
+        int segments = this.pending[offset + 26] & 0xFF;
+        if(available < HEADER_SIZE + segments)
+            return -1;
+        int size = HEADER_SIZE + segments;
+        for(int i = 0; i < segments; i++)
+            size += this.pending[offset + HEADER_SIZE + i] & 0xFF;
+        return available < size ? -1 : size;
+    }
+
+    private void readPage(int offset, int size) throws IOException {
+        byte[] page = this.pending;
+        if(page[offset + 4] != 0)
+            throw new IOException("Unsupported Ogg version " + page[offset + 4]);
+        int headerType = page[offset + 5] & 0xFF;
+        int serial = readInt(page, offset + 14);
+        long sequence = readInt(page, offset + 18) & 0xFFFFFFFFL;
+        int crc = readInt(page, offset + 22);
+        if(this.pages == 0)
+            this.serial = serial;
+        else if(serial != this.serial)
+            throw new IOException("Unexpected stream serial number " + serial);
+        if(sequence != this.expectedSequence)
+            throw new IOException("Page " + sequence + " received, " + this.expectedSequence + " expected");
+        this.expectedSequence = sequence + 1;
+        if(checksum(page, offset, size) != crc)
+            throw new IOException("Invalid CRC on page " + sequence);
+        this.pages++;
+        if((headerType & 0x04) != 0)
+            this.endOfStream = true;
+
+        int segments = page[offset + 26] & 0xFF;
+        int data = offset + HEADER_SIZE + segments;
+        for(int i = 0; i < segments; i++) {
+            int lacing = page[offset + HEADER_SIZE + i] & 0xFF;
+            this.packet.write(page, data, lacing);
+            data += lacing;
+            if(lacing < 255) {
+                this.onPacket(this.packet.toByteArray());
+                this.packet.reset();
+            }
+        }
+    }
+
+    private void onPacket(byte[] packet) {
+        this.packets++;
+        if(packet.length == 0 || isHeader(packet, "OpusHead") || isHeader(packet, "OpusTags"))
+            return;
+        this.audioSeconds += packetDuration(packet);
+    }
+
+    /**
+     * Duration of an Opus packet, from its TOC byte (RFC 6716, section 3.1)
+     */
+    static double packetDuration(byte[] packet) {
+        int toc = packet[0] & 0xFF;
+        int config = toc >> 3;
+        double frame;
+        if(config < 12)
+            frame = new double[]{0.010, 0.020, 0.040, 0.060}[config & 3];
+        else if(config < 16)
+            frame = (config & 1) == 0 ? 0.010 : 0.020;
+        else
+            frame = new double[]{0.0025, 0.005, 0.010, 0.020}[config & 3];
+        int frames;
+        switch(toc & 3) {
+        case 0:
+            frames = 1;
+            break;
+        case 3:
+            frames = packet.length > 1 ? packet[1] & 0x3F : 0;
+            break;
+        default:
+            frames = 2;
+        }
+        return frame * frames;
+    }
+
+    private static boolean isHeader(byte[] packet, String magic) {
+        if(packet.length < magic.length())
+            return false;
+        for(int i = 0; i < magic.length(); i++) {
+            if(packet[i] != magic.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * CRC of a page, computed with its CRC field set to zero
+     */
+    static int checksum(byte[] page, int offset, int size) {
+        int crc = 0;
+        for(int i = 0; i < size; i++) {
+            int b = (i >= 22 && i < 26) ? 0 : page[offset + i] & 0xFF;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) & 0xFF) ^ b];
+        }
+        return crc;
+    }
+
+    public int getPages() {
+        return this.pages;
+    }
+
+    public int getPackets() {
+        return this.packets;
+    }
+
+    /**
+     * @return duration (s) of the audio received so far
+     */
+    public double getAudioSeconds() {
+        return this.audioSeconds;
+    }
+
+    public boolean isEndOfStream() {
+        return this.endOfStream;
+    }
+}
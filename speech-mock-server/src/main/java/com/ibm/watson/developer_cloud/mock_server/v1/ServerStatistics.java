@@ -0,0 +1,112 @@
+/**
+ * © Copyright IBM Corporation 2015
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package com.ibm.watson.developer_cloud.mock_server.v1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the mock server received and sent, for assertions and benchmarks.
+ */
+public class ServerStatistics {
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong utterances = new AtomicLong();
+    private final AtomicLong audioMessages = new AtomicLong();
+    private final AtomicLong audioBytes = new AtomicLong();
+    private final AtomicLong oggPages = new AtomicLong();
+    private final AtomicLong invalidPages = new AtomicLong();
+    private final AtomicLong interimResults = new AtomicLong();
+    private final AtomicLong finalResults = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public void onConnection() {
+        this.connections.incrementAndGet();
+    }
+
+    public void onUtterance() {
+        this.utterances.incrementAndGet();
+    }
+
+    public void onAudio(int length) {
+        this.audioMessages.incrementAndGet();
+        this.audioBytes.addAndGet(length);
+    }
+
+    public void onOggPages(int count) {
+        this.oggPages.addAndGet(count);
+    }
+
+    public void onInvalidPage() {
+        this.invalidPages.incrementAndGet();
+    }
+
+    public void onResult(boolean isFinal) {
+        if(isFinal)
+            this.finalResults.incrementAndGet();
+        else
+            this.interimResults.incrementAndGet();
+    }
+
+    public void onError() {
+        this.errors.incrementAndGet();
+    }
+
+    public long getConnections() {
+        return this.connections.get();
+    }
+
+    public long getUtterances() {
+        return this.utterances.get();
+    }
+
+    public long getAudioMessages() {
+        return this.audioMessages.get();
+    }
+
+    public long getAudioBytes() {
+        return this.audioBytes.get();
+    }
+
+    public long getOggPages() {
+        return this.oggPages.get();
+    }
+
+    public long getInvalidPages() {
+        return this.invalidPages.get();
+    }
+
+    public long getInterimResults() {
+        return this.interimResults.get();
+    }
+
+    public long getFinalResults() {
+        return this.finalResults.get();
+    }
+
+    public long getErrors() {
+        return this.errors.get();
+    }
+
+    @Override
+    public String toString() {
+        return "connections: " + getConnections() + ", utterances: " + getUtterances()
+                + ", audio messages: " + getAudioMessages() + ", audio bytes: " + getAudioBytes()
+                + ", ogg pages: " + getOggPages() + ", invalid pages: " + getInvalidPages()
+                + ", interim results: " + getInterimResults() + ", final results: " + getFinalResults()
+                + ", errors: " + getErrors();
+    }
+}